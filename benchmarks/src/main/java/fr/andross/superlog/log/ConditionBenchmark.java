@@ -0,0 +1,71 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import fr.andross.superlog.SuperLog;
+import org.bukkit.Material;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the event conditions, checked for each event before serializing it:
+ * a block type not ignored (STONE), and an ignored one (BEDROCK).
+ * @version 1.2
+ * @author Andross
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConditionBenchmark {
+    @Param({ "STONE", "BEDROCK" })
+    public String type;
+    private File folder;
+    private SuperLog pl;
+    private LogSerializer serializer;
+
+    @Setup
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("superlog-bench").toFile();
+        pl = HeadlessServer.start(folder, HotPathBenchmark.getEvents());
+        final BlockBreakEvent event = new BlockBreakEvent(HeadlessServer.block(Material.valueOf(type), 0, 64, 0), HeadlessServer.player(0));
+        serializer = new LogSerializer(pl, pl.getLogConfig().getEvents().get("BlockBreakEvent"), event);
+    }
+
+    @TearDown
+    public void tearDown() {
+        HeadlessServer.stop(pl);
+        HeadlessServer.delete(folder);
+    }
+
+    /**
+     * Checking the IGNORED condition of the event
+     * @return true if ignored, otherwise false
+     */
+    @Benchmark
+    public boolean isAnIgnoredEvent() {
+        return serializer.isAnIgnoredEvent(type);
+    }
+}
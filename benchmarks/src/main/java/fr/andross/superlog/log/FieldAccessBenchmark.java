@@ -0,0 +1,187 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import fr.andross.superlog.SuperLog;
+import fr.andross.superlog.utils.Utils;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.advancement.Advancement;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.AnimalTamer;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Item;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.player.AsyncPlayerChatEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.MerchantRecipe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the event fields reading, as done by the serializer: all fields of all events read from the same call site.
+ * The reflective read with the instanceof chain on each value (before the fields were compiled),
+ * against the compiled fields, with their kind resolved once.
+ * @version 1.2
+ * @author Andross
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FieldAccessBenchmark {
+    private static final int EVENTS = 1024; // power of two
+    // Fields read for each event class
+    private static final String[] BREAK = { "block", "player", "dropItems", "exp", "cancel" };
+    private static final String[] INTERACT = { "item", "action", "blockClicked", "blockFace", "player" };
+    private static final String[] CHAT = { "message", "format", "player", "cancel" };
+    private File folder;
+    private SuperLog pl;
+    private Event[] events;
+    private Field[][] fields;
+    private LogField[][] compiled;
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("superlog-bench").toFile();
+        pl = HeadlessServer.start(folder, HotPathBenchmark.getEvents());
+        events = new Event[EVENTS];
+        fields = new Field[EVENTS][];
+        compiled = new LogField[EVENTS][];
+        final Field[][] byEvent = { fields(BlockBreakEvent.class, BREAK), fields(PlayerInteractEvent.class, INTERACT), fields(AsyncPlayerChatEvent.class, CHAT) };
+        final LogField[][] compiledByEvent = new LogField[byEvent.length][];
+        for (int i = 0; i < byEvent.length; i++) {
+            compiledByEvent[i] = new LogField[byEvent[i].length];
+            final LogTemplate template = new LogTemplate("{" + String.join("} {", i == 0 ? BREAK : i == 1 ? INTERACT : CHAT) + "}");
+            for (int f = 0; f < byEvent[i].length; f++) compiledByEvent[i][f] = new LogField(byEvent[i][f], template, null);
+        }
+        for (int i = 0; i < EVENTS; i++) {
+            final Player p = HeadlessServer.player(i);
+            final Block block = HeadlessServer.block(Material.STONE, i, 64, i);
+            final int type = i % 3;
+            if (type == 0) events[i] = new BlockBreakEvent(block, p);
+            else if (type == 1) events[i] = new PlayerInteractEvent(p, Action.RIGHT_CLICK_BLOCK, new ItemStack(Material.DIAMOND_PICKAXE), block, BlockFace.UP);
+            else events[i] = new AsyncPlayerChatEvent(true, p, "hello #" + i, Collections.emptySet());
+            fields[i] = byEvent[type];
+            compiled[i] = compiledByEvent[type];
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        HeadlessServer.stop(pl);
+        HeadlessServer.delete(folder);
+    }
+
+    @NotNull
+    private static Field[] fields(@NotNull final Class<? extends Event> event, @NotNull final String[] names) {
+        final Field[] fields = new Field[names.length];
+        for (int i = 0; i < names.length; i++) {
+            fields[i] = Utils.getField(event, names[i]);
+            if (fields[i] == null) throw new IllegalStateException("Unknown field '" + names[i] + "' for '" + event.getSimpleName() + "'.");
+        }
+        return fields;
+    }
+
+    /**
+     * Reading the fields with {@link Field#get(Object)}, then finding how to render each value
+     * with the instanceof chain of the serializer, before the fields were compiled
+     * @param bh the values and their kind
+     * @throws IllegalAccessException never, the fields are accessible
+     */
+    @Benchmark
+    public void reflective(final Blackhole bh) throws IllegalAccessException {
+        final int i = next++ & (EVENTS - 1);
+        final Event e = events[i];
+        for (final Field f : fields[i]) {
+            final Object o = f.get(e);
+            bh.consume(o);
+            bh.consume(getKind(o));
+        }
+    }
+
+    /**
+     * Reading the compiled fields, as the serializer does
+     * @param bh the values and their kind
+     */
+    @Benchmark
+    public void compiled(final Blackhole bh) {
+        final int i = next++ & (EVENTS - 1);
+        final Event e = events[i];
+        for (final LogField f : compiled[i]) {
+            final LogField.Kind kind = f.getKind();
+            if (kind == LogField.Kind.INT) bh.consume(f.getInt(e));
+            else if (kind == LogField.Kind.LONG) bh.consume(f.getLong(e));
+            else if (kind == LogField.Kind.BOOLEAN) bh.consume(f.getBoolean(e));
+            else {
+                final Object o = f.get(e);
+                bh.consume(o);
+                bh.consume(f.getKind(o));
+            }
+        }
+    }
+
+    /**
+     * The instanceof chain of the serializer, before the fields were compiled
+     * @param o the value
+     * @return how the value is rendered
+     */
+    @NotNull
+    private static LogField.Kind getKind(@Nullable final Object o) {
+        if (o instanceof String) return LogField.Kind.STRING;
+        else if (o instanceof Integer || o instanceof Boolean || o instanceof Long) return LogField.Kind.NUMBER;
+        else if (o instanceof Advancement) return LogField.Kind.ADVANCEMENT;
+        else if (o instanceof AnimalTamer) return LogField.Kind.ANIMAL_TAMER;
+        else if (o instanceof ItemStack) return LogField.Kind.ITEM_STACK;
+        else if (o instanceof Item) return LogField.Kind.ITEM;
+        else if (o instanceof Material) return LogField.Kind.MATERIAL;
+        else if (o instanceof World) return LogField.Kind.WORLD;
+        else if (o instanceof Block) return LogField.Kind.BLOCK;
+        else if (o instanceof Location) return LogField.Kind.LOCATION;
+        else if (o instanceof Entity) return LogField.Kind.ENTITY;
+        else if (o instanceof Inventory) return LogField.Kind.INVENTORY;
+        else if (o instanceof CommandSender) return LogField.Kind.COMMAND_SENDER;
+        else if (o instanceof List) return LogField.Kind.LIST;
+        else if (o instanceof Map) return LogField.Kind.MAP;
+        else if (o instanceof MerchantRecipe) return LogField.Kind.MERCHANT_RECIPE;
+        else if (o instanceof Enum) return LogField.Kind.ENUM;
+        return LogField.Kind.UNSUPPORTED;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the '/log filter' scan: the log files of a player, not indexed,
+ * are read line by line and the logs of an event are written into the filtered file.
+ * @version 1.2
+ * @author Andross
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FilterBenchmark {
+    private static final int FILES = 4;
+    private static final int LINES = 250000; // per file
+    private static final String[] EVENTS = { "BlockBreakEvent", "BlockPlaceEvent", "PlayerInteractEvent", "AsyncPlayerChatEvent" };
+    private File folder;
+    private final List<File> files = new ArrayList<>();
+
+    @Setup
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("superlog-bench").toFile();
+        for (int f = 0; f < FILES; f++) {
+            final File file = new File(folder, "0" + (f + 1) + "-01-2020_players.log");
+            try (final BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+                for (int i = 0; i < LINES; i++) {
+                    final String event = EVENTS[i % EVENTS.length];
+                    writer.write("[" + String.format("%02d:%02d:%02d", i / 3600 % 24, i / 60 % 60, i % 60) + "][" + event + "]: "
+                            + (event.equals("AsyncPlayerChatEvent") ? "said BlockBreakEvent is " + i : "STONE at " + i + " 64 " + i + " in world"));
+                    writer.newLine();
+                }
+            }
+            files.add(file);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        HeadlessServer.delete(folder);
+    }
+
+    /**
+     * Filtering the logs of an event, on one thread
+     * @return the amount of matching logs
+     * @throws IOException if the filtered file can not be written
+     */
+    @Benchmark
+    public long scan() throws IOException {
+        return new LogSearch(files, LogSearch.ofEvent("BlockBreakEvent"), null, new File(folder, "filtered.log"), 1).run();
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import fr.andross.superlog.SuperLog;
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.GameMode;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.HumanEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.inventory.InventoryType;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryView;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.java.JavaPluginLoader;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Headless stand-ins of the Bukkit server objects, so SuperLog runs without a server.
+ * The scheduler runs the synchronous tasks on a single "server thread", ticking every 50 ms,
+ * and the asynchronous tasks on a small pool. The server, players, blocks and worlds are
+ * dynamic proxies answering the getters used by SuperLog; any other method returns a default value.
+ * @version 1.2
+ * @author Andross
+ */
+public final class HeadlessServer {
+    private static final String BUKKIT_VERSION = "1.16.1-R0.1-SNAPSHOT";
+    private static final long TICK_MILLIS = 50;
+    private static final Object NONE = new Object(); // answered by default
+    private static final Logger LOGGER = Logger.getLogger("Headless");
+    private static final UUID WORLD_ID = UUID.randomUUID();
+    private static volatile Thread serverThread;
+    private static final ScheduledExecutorService SYNC = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread t = new Thread(r, "Server thread");
+        t.setDaemon(true);
+        serverThread = t;
+        return t;
+    });
+    private static final ScheduledExecutorService ASYNC = Executors.newScheduledThreadPool(2, r -> {
+        final Thread t = new Thread(r, "Headless Scheduler");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final List<Future<?>> tasks = new CopyOnWriteArrayList<>();
+
+    public static final World WORLD = proxy(World.class, (method, args) -> {
+        switch (method) {
+            case "getName": return "world";
+            case "getUID": return WORLD_ID;
+            case "getEnvironment": return World.Environment.NORMAL;
+            default: return NONE;
+        }
+    });
+
+    public static final ConsoleCommandSender CONSOLE = proxy(ConsoleCommandSender.class, (method, args) -> {
+        switch (method) {
+            case "sendMessage":
+                if (args[0] instanceof String) System.out.println(ChatColor.stripColor((String) args[0]));
+                else if (args[0] instanceof String[]) for (final String m : (String[]) args[0]) System.out.println(ChatColor.stripColor(m));
+                return null;
+            case "getName": return "CONSOLE";
+            case "hasPermission":
+            case "isOp": return true;
+            default: return NONE;
+        }
+    });
+
+    private static final BukkitScheduler SCHEDULER = proxy(BukkitScheduler.class, (method, args) -> {
+        if (args == null || args.length < 2 || !(args[1] instanceof Runnable)) {
+            if (method.equals("cancelTasks")) {
+                for (final Future<?> task : tasks) task.cancel(false);
+                tasks.clear();
+            }
+            return NONE;
+        }
+        final Runnable task = guard((Runnable) args[1]);
+        final long delay = args.length > 2 ? (Long) args[2] * TICK_MILLIS : 0;
+        final long period = args.length > 3 ? Math.max(1, (Long) args[3]) * TICK_MILLIS : 0;
+        final ScheduledExecutorService executor = method.contains("Async") ? ASYNC : SYNC;
+        tasks.add(period > 0 ? executor.scheduleAtFixedRate(task, delay, period, TimeUnit.MILLISECONDS) : executor.schedule(task, delay, TimeUnit.MILLISECONDS));
+        return NONE;
+    });
+
+    private static final PluginManager PLUGIN_MANAGER = proxy(PluginManager.class, (method, args) -> NONE); // events are called directly
+
+    private static final Server SERVER = proxy(Server.class, (method, args) -> {
+        switch (method) {
+            case "getLogger": return LOGGER;
+            case "getName": return "Headless";
+            case "getVersion": return "headless";
+            case "getBukkitVersion": return BUKKIT_VERSION;
+            case "getScheduler": return SCHEDULER;
+            case "getPluginManager": return PLUGIN_MANAGER;
+            case "getConsoleSender": return CONSOLE;
+            case "isPrimaryThread": return Thread.currentThread() == serverThread;
+            case "getWorld": return WORLD;
+            case "getWorlds": return Collections.singletonList(WORLD);
+            default: return NONE;
+        }
+    });
+
+    private HeadlessServer() { }
+
+    /**
+     * Answer of a proxy
+     */
+    private interface Answer {
+        /**
+         * Answering a method call
+         * @param method the method name
+         * @param args the arguments, null if none
+         * @return the result, or NONE to return the default value of the method
+         */
+        Object answer(@NotNull String method, Object[] args);
+    }
+
+    @NotNull
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(@NotNull final Class<T> type, @NotNull final Answer answer) {
+        return (T) Proxy.newProxyInstance(HeadlessServer.class.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "equals": return proxy == args[0];
+                case "hashCode": return System.identityHashCode(proxy);
+                case "toString": return "Headless" + type.getSimpleName();
+                default: break;
+            }
+            final Object value = answer.answer(method.getName(), args);
+            return value == NONE ? getDefault(method.getReturnType()) : value;
+        });
+    }
+
+    private static Object getDefault(@NotNull final Class<?> type) {
+        if (type == boolean.class) return false;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        if (type == double.class) return 0D;
+        if (type == float.class) return 0F;
+        if (type == short.class) return (short) 0;
+        if (type == byte.class) return (byte) 0;
+        if (type == char.class) return '\0';
+        if (type == List.class || type == Collection.class) return Collections.emptyList();
+        if (type == Set.class) return Collections.emptySet();
+        if (type == Map.class) return Collections.emptyMap();
+        return null;
+    }
+
+    @NotNull
+    private static Runnable guard(@NotNull final Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (final Throwable e) {
+                LOGGER.log(Level.WARNING, "Error in a scheduled task.", e);
+            }
+        };
+    }
+
+    /**
+     * Loading SuperLog into a folder, without a server.
+     * The default config is used, without its events: only the events set are logged.
+     * @param dataFolder the plugin folder
+     * @param settings config values set over the default config, by path (e.g: "events.BlockBreakEvent.message")
+     * @return the loaded plugin
+     * @throws IOException if the config can not be written
+     */
+    @NotNull
+    public static synchronized SuperLog start(@NotNull final File dataFolder, @NotNull final Map<String, Object> settings) throws IOException {
+        if (Bukkit.getServer() == null) Bukkit.setServer(SERVER);
+        final SuperLog pl = create(dataFolder);
+        pl.saveDefaultConfig();
+        final File configFile = new File(dataFolder, "config.yml");
+        final YamlConfiguration config = YamlConfiguration.loadConfiguration(configFile);
+        config.set("events", null);
+        config.set("check-update", false);
+        config.set("logs-in-console", false);
+        settings.forEach(config::set);
+        config.save(configFile);
+        pl.load(CONSOLE);
+        return pl;
+    }
+
+    /**
+     * Creating SuperLog without a server.
+     * Its constructor can only run in a plugin class loader: the plugin is created with the initialization
+     * constructor inherited from JavaPlugin (through a serialization constructor, which skips the constructor
+     * of SuperLog), then the fields initialized by SuperLog are set here.
+     * @param dataFolder the plugin folder
+     * @return the plugin
+     */
+    @NotNull
+    @SuppressWarnings("deprecation")
+    private static SuperLog create(@NotNull final File dataFolder) {
+        try {
+            final Constructor<JavaPlugin> init = JavaPlugin.class.getDeclaredConstructor(JavaPluginLoader.class, PluginDescriptionFile.class, File.class, File.class);
+            final Class<?> factoryClass = Class.forName("sun.reflect.ReflectionFactory");
+            final Object factory = factoryClass.getMethod("getReflectionFactory").invoke(null);
+            final Constructor<?> constructor = (Constructor<?>) factoryClass.getMethod("newConstructorForSerialization", Class.class, Constructor.class).invoke(factory, SuperLog.class, init);
+            final SuperLog pl = (SuperLog) constructor.newInstance(new JavaPluginLoader(SERVER), new PluginDescriptionFile("SuperLog", "v1.2", SuperLog.class.getName()),
+                    dataFolder, new File(dataFolder, "SuperLog.jar"));
+
+            // Fields initialized by SuperLog: any new one must be set here
+            final Field logUtils = SuperLog.class.getDeclaredField("logUtils");
+            logUtils.setAccessible(true);
+            logUtils.set(pl, new LogUtils(pl));
+            for (final Field f : SuperLog.class.getDeclaredFields()) {
+                if (Modifier.isStatic(f.getModifiers()) || !Modifier.isFinal(f.getModifiers())) continue;
+                f.setAccessible(true);
+                if (f.get(pl) == null) throw new IllegalStateException("Field '" + f.getName() + "' of SuperLog is not initialized by HeadlessServer.");
+            }
+            return pl;
+        } catch (final ReflectiveOperationException e) {
+            throw new IllegalStateException("Can not create SuperLog without a server.", e);
+        }
+    }
+
+    /**
+     * Stopping SuperLog: the pending logs are saved, and the scheduled tasks cancelled
+     * @param pl the plugin
+     * @return the amount of files saved
+     */
+    public static int stop(@NotNull final SuperLog pl) {
+        final int count = pl.getLogManager().shutdown();
+        for (final Future<?> task : tasks) task.cancel(false);
+        tasks.clear();
+        return count;
+    }
+
+    /**
+     * Running a task on the server thread, and waiting for it
+     * @param task the task
+     * @throws InterruptedException if interrupted while waiting
+     * @throws ExecutionException if the task failed
+     */
+    public static void sync(@NotNull final Runnable task) throws InterruptedException, ExecutionException {
+        SYNC.submit(task).get();
+    }
+
+    /**
+     * Deleting a folder, with its content
+     * @param folder the folder
+     */
+    public static void delete(@NotNull final File folder) {
+        final File[] content = folder.listFiles();
+        if (content != null) for (final File f : content) delete(f);
+        folder.delete();
+    }
+
+    /**
+     * Creating a player
+     * @param id the player id, used for its name, uuid and location
+     * @return the player
+     */
+    @NotNull
+    public static Player player(final int id) {
+        final String name = "bench" + id;
+        final UUID uuid = new UUID(0, id);
+        return proxy(Player.class, (method, args) -> {
+            switch (method) {
+                case "getName":
+                case "getDisplayName": return name;
+                case "getUniqueId": return uuid;
+                case "getLocation": return new Location(WORLD, id % 1000, 64, id / 1000);
+                case "getWorld": return WORLD;
+                case "getType": return EntityType.PLAYER;
+                case "getGameMode": return GameMode.SURVIVAL;
+                case "getHealth": return 20D;
+                case "isOnline": return true;
+                default: return NONE;
+            }
+        });
+    }
+
+    /**
+     * Creating a block
+     * @param type the block type
+     * @param x the block x
+     * @param y the block y
+     * @param z the block z
+     * @return the block
+     */
+    @NotNull
+    public static Block block(@NotNull final Material type, final int x, final int y, final int z) {
+        final BlockData data = proxy(BlockData.class, (method, args) -> {
+            switch (method) {
+                case "getAsString": return "minecraft:" + type.name().toLowerCase();
+                case "getMaterial": return type;
+                default: return NONE;
+            }
+        });
+        return proxy(Block.class, (method, args) -> {
+            switch (method) {
+                case "getType": return type;
+                case "getLocation": return new Location(WORLD, x, y, z);
+                case "getWorld": return WORLD;
+                case "getX": return x;
+                case "getY": return y;
+                case "getZ": return z;
+                case "getBlockData": return data;
+                default: return NONE;
+            }
+        });
+    }
+
+    /**
+     * Creating the state of a block
+     * @param type the block type
+     * @return the block state
+     */
+    @NotNull
+    public static BlockState state(@NotNull final Material type) {
+        return proxy(BlockState.class, (method, args) -> method.equals("getType") ? type : NONE);
+    }
+
+    /**
+     * Creating the view of an inventory opened by a player
+     * @param p the player
+     * @param type the inventory type
+     * @param location the inventory location
+     * @return the inventory view
+     */
+    @NotNull
+    public static InventoryView view(@NotNull final Player p, @NotNull final InventoryType type, @NotNull final Location location) {
+        final Inventory top = inventory(type, location, 27);
+        final Inventory bottom = inventory(InventoryType.PLAYER, p.getLocation(), 36);
+        return new InventoryView() {
+            @NotNull
+            @Override
+            public Inventory getTopInventory() {
+                return top;
+            }
+
+            @NotNull
+            @Override
+            public Inventory getBottomInventory() {
+                return bottom;
+            }
+
+            @NotNull
+            @Override
+            public HumanEntity getPlayer() {
+                return p;
+            }
+
+            @NotNull
+            @Override
+            public InventoryType getType() {
+                return type;
+            }
+
+            @NotNull
+            @Override
+            public String getTitle() {
+                return type.getDefaultTitle();
+            }
+        };
+    }
+
+    @NotNull
+    private static Inventory inventory(@NotNull final InventoryType type, @NotNull final Location location, final int size) {
+        final ItemStack[] contents = new ItemStack[size];
+        return proxy(Inventory.class, (method, args) -> {
+            switch (method) {
+                case "getType": return type;
+                case "getLocation": return location;
+                case "getSize": return size;
+                case "getContents":
+                case "getStorageContents": return contents.clone();
+                default: return NONE;
+            }
+        });
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import fr.andross.superlog.SuperLog;
+import fr.andross.superlog.utils.LoggedEvent;
+import org.bukkit.Material;
+import org.bukkit.block.BlockFace;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.inventory.ItemStack;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the logging hot path, on the event thread:
+ * serializing an event, and adding its record to the log manager (rendered and written by the log worker).
+ * @version 1.2
+ * @author Andross
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HotPathBenchmark {
+    static final int PLAYERS = 1024; // power of two
+    private File folder;
+    private SuperLog pl;
+    private LoggedEvent loggedEvent;
+    private PlayerInteractEvent[] events;
+    private LogRecord[] records;
+    private int next = 0;
+
+    /**
+     * Events logged by the benchmarks
+     * @return the events config, by path
+     */
+    static Map<String, Object> getEvents() {
+        final Map<String, Object> events = new LinkedHashMap<>();
+        events.put("events.BlockBreakEvent.enabled", true);
+        events.put("events.BlockBreakEvent.message", "broke {NAME} at {LOCX} {LOCY} {LOCZ} in {LOCWORLD}");
+        events.put("events.BlockBreakEvent.IGNORED", Arrays.asList("BEDROCK", "BARRIER", "COMMAND_BLOCK", "SPAWNER", "END_PORTAL_FRAME", "TNT", "LAVA", "CHEST"));
+        events.put("events.PlayerInteractEvent.enabled", true);
+        events.put("events.PlayerInteractEvent.message", "interacted ({ACTION}) with {ITEM.NAME} x{ITEM.AMOUNT} at {LOCX} {LOCY} {LOCZ}");
+        return events;
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("superlog-bench").toFile();
+        pl = HeadlessServer.start(folder, getEvents());
+        loggedEvent = pl.getLogConfig().getEvents().get("PlayerInteractEvent");
+        events = new PlayerInteractEvent[PLAYERS];
+        records = new LogRecord[PLAYERS];
+        for (int i = 0; i < PLAYERS; i++) {
+            events[i] = new PlayerInteractEvent(HeadlessServer.player(i), Action.RIGHT_CLICK_BLOCK, new ItemStack(Material.DIAMOND_PICKAXE),
+                    HeadlessServer.block(Material.STONE, i, 64, i), BlockFace.UP);
+            records[i] = serialize(events[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        HeadlessServer.stop(pl);
+        HeadlessServer.delete(folder);
+    }
+
+    @NotNull
+    private LogRecord serialize(@NotNull final PlayerInteractEvent event) {
+        final LogSerializer serializer = new LogSerializer(pl, loggedEvent, event);
+        serializer.serializeFields(event);
+        serializer.serialize(event.getPlayer(), null);
+        serializer.setPlayerName(event.getPlayer().getName());
+        serializer.setEventType(LogFamily.PLAYER.getEventType());
+        return serializer.capture();
+    }
+
+    /**
+     * Serializing the fields and the player of an event, into a record
+     * @return the record
+     */
+    @Benchmark
+    public LogRecord serialize() {
+        return serialize(events[next++ & (PLAYERS - 1)]);
+    }
+
+    /**
+     * Adding a record to the log manager.
+     * Records are dropped if the log worker falls behind: see the dropped counters of '/log stats'.
+     */
+    @Benchmark
+    public void log() {
+        pl.getLogManager().log(records[next++ & (PLAYERS - 1)], false);
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import fr.andross.superlog.SuperLog;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.inventory.InventoryOpenEvent;
+import org.bukkit.event.inventory.InventoryType;
+import org.bukkit.event.player.AsyncPlayerChatEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.inventory.EquipmentSlot;
+import org.bukkit.inventory.ItemStack;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Headless load generator.
+ * Synthetic events are fired through the event executors of SuperLog ({@link LogExecutor#execute}, as the server does)
+ * at a fixed rate, on the server thread. They follow a mix of block break/place, chat, interact and inventory events,
+ * or replay the logs of a folder: each replayed log fires an event of its type, a chat log with its message.
+ * The logs are written into a temporary plugin folder, deleted once the test is done.
+ * <p>Usage: {@code java -cp benchmarks.jar fr.andross.superlog.log.LoadTest <events/s> <seconds> [mix <Event:weight,...> | replay <folder>]}</p>
+ * @version 1.2
+ * @author Andross
+ */
+public final class LoadTest {
+    private static final int PLAYERS = 100;
+    private static final int MAX_REPLAYED = 200000;
+    private static final String DEFAULT_MIX = "BlockBreakEvent:40,BlockPlaceEvent:30,AsyncPlayerChatEvent:10,PlayerInteractEvent:15,InventoryOpenEvent:5";
+    private static final Pattern LINE = Pattern.compile("^\\[[^\\]]*\\]\\[(\\w+)\\](?:\\[[^\\]]*\\])*: (.*)$");
+    private static final Material[] MATERIALS = { Material.STONE, Material.DIRT, Material.OAK_LOG, Material.COAL_ORE, Material.IRON_ORE, Material.GRASS_BLOCK };
+    private static final Map<String, Generator> GENERATORS = new LinkedHashMap<>();
+    private final SuperLog pl;
+    private final File folder;
+    private final int rate;
+    private final int seconds;
+    private final Player[] players = new Player[PLAYERS];
+    private final Map<String, LogExecutor> executors = new HashMap<>();
+    private final List<String> eventNames = new ArrayList<>(); // events fired, in order (replay) or by weight (mix)
+    private final List<String> messages = new ArrayList<>(); // replayed messages, null for the mix
+    private final LogProfiler.Histogram latency = new LogProfiler.Histogram();
+    private final Listener listener = new Listener() { };
+    private final boolean replay;
+    private long sent = 0;
+    private long heapPeak = 0;
+
+    /**
+     * Creating a synthetic event
+     */
+    private interface Generator {
+        /**
+         * Creating an event
+         * @param p the player
+         * @param i the event number
+         * @param message the replayed message, null if not replayed
+         * @return the event
+         */
+        @NotNull
+        Event create(@NotNull Player p, long i, @Nullable String message);
+    }
+
+    static {
+        GENERATORS.put("BlockBreakEvent", (p, i, message) -> new BlockBreakEvent(block(i, 0), p));
+        GENERATORS.put("BlockPlaceEvent", (p, i, message) -> {
+            final Block placed = block(i, 1);
+            return new BlockPlaceEvent(placed, HeadlessServer.state(Material.AIR), block(i, 0), new ItemStack(placed.getType()), p, true, EquipmentSlot.HAND);
+        });
+        GENERATORS.put("AsyncPlayerChatEvent", (p, i, message) -> new AsyncPlayerChatEvent(true, p, message == null ? "hello #" + i : message, Collections.emptySet()));
+        GENERATORS.put("PlayerInteractEvent", (p, i, message) -> new PlayerInteractEvent(p, Action.RIGHT_CLICK_BLOCK, new ItemStack(Material.DIAMOND_PICKAXE), block(i, 0), BlockFace.UP));
+        GENERATORS.put("InventoryOpenEvent", (p, i, message) -> new InventoryOpenEvent(HeadlessServer.view(p, InventoryType.CHEST, block(i, 0).getLocation())));
+    }
+
+    @NotNull
+    private static Block block(final long i, final int above) {
+        return HeadlessServer.block(MATERIALS[(int) (i % MATERIALS.length)], (int) (i % 512), 64 + above, (int) (i / 512 % 512));
+    }
+
+    /**
+     * Creating a load test
+     * @param rate events per second
+     * @param seconds duration, in seconds
+     * @param mix the events fired with their weight (e.g: BlockBreakEvent:40,AsyncPlayerChatEvent:10), null to replay
+     * @param replayFolder folder of the logs to replay, null to fire the mix
+     * @throws IOException if SuperLog can not be loaded, or if there is nothing to fire
+     */
+    public LoadTest(final int rate, final int seconds, @Nullable final String mix, @Nullable final File replayFolder) throws IOException {
+        this.rate = rate;
+        this.seconds = seconds;
+        this.replay = replayFolder != null;
+        if (replayFolder != null) loadReplay(replayFolder);
+        else loadMix(mix == null ? DEFAULT_MIX : mix);
+        if (eventNames.isEmpty()) throw new IOException(replay ? "No log to replay." : "No event to fire.");
+
+        // Loading SuperLog, logging the fired events
+        final Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("events.BlockBreakEvent.message", "broke {NAME} at {LOCX} {LOCY} {LOCZ} in {LOCWORLD}");
+        settings.put("events.BlockPlaceEvent.message", "placed {NAME} at {LOCX} {LOCY} {LOCZ} in {LOCWORLD}");
+        settings.put("events.AsyncPlayerChatEvent.message", "said {MESSAGE}");
+        settings.put("events.PlayerInteractEvent.message", "interacted ({ACTION}) with {ITEM.NAME} at {LOCX} {LOCY} {LOCZ}");
+        settings.put("events.InventoryOpenEvent.message", "opened {TYPE} at {LOCX} {LOCY} {LOCZ}");
+        for (final String eventName : GENERATORS.keySet()) settings.put("events." + eventName + ".enabled", true);
+        folder = Files.createTempDirectory("superlog-loadtest").toFile();
+        pl = HeadlessServer.start(folder, settings);
+        for (final String eventName : new HashSet<>(eventNames)) {
+            final LogExecutor executor = LogExecutor.of(pl, GENERATORS.get(eventName).create(HeadlessServer.player(0), 0, null).getClass(), pl.getLogConfig().getEvents().get(eventName));
+            if (executor == null) throw new IOException("Event '" + eventName + "' is not loggable.");
+            executors.put(eventName, executor);
+        }
+        for (int i = 0; i < PLAYERS; i++) players[i] = HeadlessServer.player(i);
+    }
+
+    /**
+     * Loading the events mix
+     * @param mix the events with their weight, separated by commas
+     * @throws IOException if an event is unknown
+     */
+    private void loadMix(@NotNull final String mix) throws IOException {
+        for (final String entry : mix.split(",")) {
+            final String[] split = entry.trim().split(":");
+            if (!GENERATORS.containsKey(split[0])) throw new IOException("Unknown event '" + split[0] + "'. Known: " + GENERATORS.keySet());
+            int weight;
+            try {
+                weight = split.length > 1 ? Integer.parseInt(split[1]) : 1;
+            } catch (final NumberFormatException e) {
+                throw new IOException("Invalid weight '" + split[1] + "' of '" + split[0] + "'.");
+            }
+            for (int i = 0; i < weight; i++) {
+                eventNames.add(split[0]);
+                messages.add(null);
+            }
+        }
+    }
+
+    /**
+     * Loading the logs to replay, from the uncompressed log files of a folder.
+     * The logs of the events which can not be fired are skipped.
+     * @param folder the folder
+     * @throws IOException if the folder can not be read
+     */
+    private void loadReplay(@NotNull final File folder) throws IOException {
+        if (!folder.isDirectory()) throw new IOException("Unknown folder '" + folder + "'.");
+        final Deque<File> folders = new ArrayDeque<>(Collections.singleton(folder));
+        while (!folders.isEmpty() && eventNames.size() < MAX_REPLAYED) {
+            final File[] content = folders.poll().listFiles();
+            if (content == null) continue;
+            Arrays.sort(content);
+            for (final File f : content) {
+                if (f.isDirectory()) {
+                    folders.add(f);
+                    continue;
+                }
+                if (!f.getName().endsWith(".log")) continue;
+                try (final BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8))) {
+                    for (String line; (line = br.readLine()) != null && eventNames.size() < MAX_REPLAYED;) {
+                        final Matcher m = LINE.matcher(line);
+                        if (!m.matches() || !GENERATORS.containsKey(m.group(1))) continue;
+                        eventNames.add(m.group(1));
+                        messages.add(m.group(2));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Running the load test
+     * @return the report
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @NotNull
+    public List<String> run() throws InterruptedException {
+        final LogManager manager = pl.getLogManager();
+        final Runtime runtime = Runtime.getRuntime();
+        final long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        final long lostBefore = manager.getDropped() + manager.getMemoryDropped() + manager.getSampledOut();
+        heapPeak = heapBefore;
+
+        // Firing the events on the server thread, each tick, to keep the rate
+        final Random random = new Random(0);
+        final int size = eventNames.size();
+        final CountDownLatch done = new CountDownLatch(1);
+        final long start = System.nanoTime();
+        final long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        Bukkit.getScheduler().runTaskTimer(pl, () -> {
+            if (done.getCount() == 0) return;
+            final long now = System.nanoTime();
+            final long expected = (Math.min(now, end) - start) * rate / TimeUnit.SECONDS.toNanos(1);
+            while (sent < expected) {
+                final int index = replay ? (int) (sent % size) : random.nextInt(size);
+                fire(eventNames.get(index), messages.get(index));
+                sent++;
+            }
+            heapPeak = Math.max(heapPeak, runtime.totalMemory() - runtime.freeMemory());
+            if (now >= end) done.countDown();
+        }, 1L, 1L);
+        done.await();
+        final long generated = System.nanoTime() - start;
+
+        // Waiting for the log worker, then saving
+        final long timeout = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (manager.getQueueSize() > 0 && System.nanoTime() < timeout) LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        manager.saveAll();
+        final long drained = System.nanoTime() - start;
+        final long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+        final long lost = manager.getDropped() + manager.getMemoryDropped() + manager.getSampledOut() - lostBefore;
+
+        // Bytes on disk, then cleaning
+        HeadlessServer.stop(pl);
+        final long bytes = size(new File(folder, "logs"));
+        HeadlessServer.delete(folder);
+
+        final List<String> report = new ArrayList<>();
+        report.add("Fired: " + sent + " events in " + TimeUnit.NANOSECONDS.toMillis(generated) + " ms (" + (sent * TimeUnit.SECONDS.toNanos(1) / Math.max(1, generated)) + " events/s), not kept: " + lost);
+        report.add("Written in: " + TimeUnit.NANOSECONDS.toMillis(drained) + " ms (" + (sent * TimeUnit.SECONDS.toNanos(1) / Math.max(1, drained)) + " events/s)");
+        report.add("Event latency: " + latency.getPercentile(0.5) + " ns p50, " + latency.getPercentile(0.99) + " ns p99, " + latency.getPercentile(0.999) + " ns p99.9");
+        report.add("Heap: " + (heapBefore >> 20) + " MiB before, " + (heapPeak >> 20) + " MiB peak, " + (heapAfter >> 20) + " MiB after");
+        report.add("Bytes on disk: " + (bytes >> 10) + " KiB (" + (sent == 0 ? 0 : bytes / sent) + " bytes per event)");
+        return report;
+    }
+
+    /**
+     * Firing an event through its event executor, on the current thread
+     * @param eventName the event name
+     * @param message the replayed message, null if not replayed
+     */
+    private void fire(@NotNull final String eventName, @Nullable final String message) {
+        final Event event = GENERATORS.get(eventName).create(players[(int) (sent % PLAYERS)], sent, message);
+        final long start = System.nanoTime();
+        executors.get(eventName).execute(listener, event);
+        latency.add(System.nanoTime() - start);
+    }
+
+    private static long size(@NotNull final File file) {
+        if (file.isFile()) return file.length();
+        long bytes = 0;
+        final File[] content = file.listFiles();
+        if (content != null) for (final File f : content) bytes += size(f);
+        return bytes;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        if (args.length < 2 || (args.length > 2 && (args.length < 4 || !(args[2].equalsIgnoreCase("mix") || args[2].equalsIgnoreCase("replay"))))) {
+            System.out.println("Usage: LoadTest <events/s> <seconds> [mix <Event:weight,...> | replay <folder>]");
+            System.out.println("Events: " + GENERATORS.keySet());
+            return;
+        }
+        final int rate = Math.max(1, Integer.parseInt(args[0]));
+        final int seconds = Math.max(1, Integer.parseInt(args[1]));
+        final boolean replay = args.length > 2 && args[2].equalsIgnoreCase("replay");
+        final LoadTest test = new LoadTest(rate, seconds, args.length > 2 && !replay ? args[3] : null, replay ? new File(args[3]) : null);
+        System.out.println("Firing " + rate + " events/s during " + seconds + " seconds...");
+        test.run().forEach(System.out::println);
+    }
+}
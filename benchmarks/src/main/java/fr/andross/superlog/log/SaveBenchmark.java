@@ -0,0 +1,100 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import fr.andross.superlog.SuperLog;
+import fr.andross.superlog.utils.LoggedEvent;
+import org.bukkit.Material;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the saves under contention: event threads keep adding records
+ * while another thread saves all logs, like the save task and '/log save' do.
+ * The records are spread over the log files of many players.
+ * @version 1.2
+ * @author Andross
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class SaveBenchmark {
+    private File folder;
+    private SuperLog pl;
+    private LogRecord[] records;
+
+    /**
+     * Next record added by an event thread
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next = 0;
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("superlog-bench").toFile();
+        pl = HeadlessServer.start(folder, HotPathBenchmark.getEvents());
+        final LoggedEvent loggedEvent = pl.getLogConfig().getEvents().get("BlockBreakEvent");
+        records = new LogRecord[HotPathBenchmark.PLAYERS];
+        for (int i = 0; i < records.length; i++) {
+            final BlockBreakEvent event = new BlockBreakEvent(HeadlessServer.block(Material.STONE, i, 64, i), HeadlessServer.player(i));
+            final LogSerializer serializer = new LogSerializer(pl, loggedEvent, event);
+            serializer.serialize(event.getBlock(), null);
+            serializer.setPlayerName(event.getPlayer().getName());
+            serializer.setEventType(LogFamily.BLOCK.getEventType());
+            records[i] = serializer.capture();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        HeadlessServer.stop(pl);
+        HeadlessServer.delete(folder);
+    }
+
+    /**
+     * Adding a record, from an event thread
+     * @param cursor the next record of this thread
+     */
+    @Benchmark
+    @Group("save")
+    @GroupThreads(3)
+    public void log(final Cursor cursor) {
+        pl.getLogManager().log(records[cursor.next++ & (records.length - 1)], true);
+    }
+
+    /**
+     * Saving all logs, waiting for the log worker
+     * @return the amount of files saved
+     */
+    @Benchmark
+    @Group("save")
+    @GroupThreads(1)
+    public int saveAll() {
+        return pl.getLogManager().saveAll();
+    }
+}
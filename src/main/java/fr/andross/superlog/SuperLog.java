@@ -17,6 +17,7 @@
  */
 package fr.andross.superlog;
 
+import fr.andross.superlog.commands.Commandquery;
 import fr.andross.superlog.commands.ICommand;
 import fr.andross.superlog.log.LogConfig;
 import fr.andross.superlog.log.LogManager;
@@ -26,7 +27,10 @@ import fr.andross.superlog.utils.metrics.Metrics;
 import org.bukkit.Bukkit;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.util.StringUtil;
 import org.jetbrains.annotations.NotNull;
@@ -45,7 +49,7 @@ import java.util.stream.Stream;
  */
 public final class SuperLog extends JavaPlugin {
     private LogManager logManager;
-    private LogConfig logConfig;
+    private volatile LogConfig logConfig; // swapped on reload, read by the log worker
     private final LogUtils logUtils = new LogUtils(this);
 
     @Override
@@ -61,7 +65,7 @@ public final class SuperLog extends JavaPlugin {
 
     @Override
     public void onDisable() {
-        getLogger().info("Saved " + logManager.saveAll() + " logs.");
+        getLogger().info("Saved " + logManager.shutdown() + " logs.");
     }
 
     /**
@@ -72,6 +76,8 @@ public final class SuperLog extends JavaPlugin {
         // Cleaning up'
         HandlerList.unregisterAll(this);
         Bukkit.getScheduler().cancelTasks(this);
+        if (logManager != null) logManager.shutdown(); // already stopped by the reload command: only saves the last captured events
+        Commandquery.clearResults();
 
         // Default config
         saveDefaultConfig();
@@ -82,14 +88,20 @@ public final class SuperLog extends JavaPlugin {
 
         // Config
         logConfig = new LogConfig(this, sender);
+
+        // Query results are kept until the player quits
+        Bukkit.getPluginManager().registerEvent(PlayerQuitEvent.class, new Listener() { }, EventPriority.MONITOR,
+                (listener, event) -> Commandquery.removeResults(((PlayerQuitEvent) event).getPlayer().getName()), this);
     }
 
-    private final List<String> commands = Stream.of(
-            "&3/log debug",
+    private static final List<String> commands = Stream.of(
+            "&3/log debug &b[show [amount]]",
             "&3/log filter &b<player> <event>",
             "&3/log live &b<player>",
+            "&3/log query &b<clauses...>",
             "&3/log reload",
             "&3/log save",
+            "&3/log stats",
             "&3/log toggle").map(Utils::color).collect(Collectors.toList());
     @Override
     public boolean onCommand(@NotNull final CommandSender sender, @NotNull final Command command, @NotNull final String label, @NotNull final String[] args) {
@@ -102,9 +114,10 @@ public final class SuperLog extends JavaPlugin {
         final String prefix = logUtils.getColoredString("messages.prefix");
 
         if (args.length > 0 && args[0].equalsIgnoreCase("reload")) { // reload the plugin
+            logManager.flushCoalesced(false); // serialized on the main thread
             getServer().getScheduler().runTaskAsynchronously(this, () -> {
-                // Saving logs
-                final int count = logManager.saveAll();
+                // Stopping the log worker and saving logs, off the main thread
+                final int count = logManager.shutdown();
                 // Finished to save, we can come back sync
                 getServer().getScheduler().scheduleSyncDelayedTask(this, () -> {
                     String logMessage = logUtils.getColoredString("messages.logs-saved");
@@ -130,7 +143,7 @@ public final class SuperLog extends JavaPlugin {
         return true;
     }
 
-    private final List<String> tab = Arrays.asList("debug", "filter", "live", "reload", "save", "toggle", "version");
+    private static final List<String> tab = Arrays.asList("debug", "filter", "live", "query", "reload", "save", "stats", "toggle", "version");
     @NotNull
     @Override
     public List<String> onTabComplete(@NotNull final CommandSender sender, @NotNull final Command command, @NotNull final String alias, @NotNull final String[] args) {
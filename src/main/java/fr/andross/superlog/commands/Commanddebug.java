@@ -41,16 +41,34 @@ public class Commanddebug implements ICommand {
 		}
 
 		final String prefix = pl.getLogUtils().getColoredString("messages.prefix");
+
+		// Showing the last debug messages
+		if (args.length > 1 && args[1].equalsIgnoreCase("show")) {
+			int amount = 20;
+			if (args.length > 2) {
+				try {
+					amount = Math.max(1, Integer.parseInt(args[2]));
+				} catch (final NumberFormatException e) {
+					sender.sendMessage(prefix + Utils.color("&cInvalid amount: &e" + args[2] + "&c."));
+					return;
+				}
+			}
+			final List<String> messages = pl.getLogManager().getProfiler().getDebug(amount);
+			if (messages.isEmpty()) sender.sendMessage(prefix + Utils.color("&eNo debug message recorded."));
+			for (final String message : messages) sender.sendMessage(prefix + Utils.color("&7" + message));
+			return;
+		}
+
 		pl.getLogManager().setDebug(!pl.getLogManager().isDebug());
 
 		if (!pl.getLogManager().isDebug()) sender.sendMessage(prefix + Utils.color("&eDebug: &c&lOFF&e."));
-		else sender.sendMessage(prefix + Utils.color("&eDebug: &2&lON&e."));
+		else sender.sendMessage(prefix + Utils.color("&eDebug: &2&lON&e. Use &7/log debug show [amount]&e to read the recorded messages."));
 	}
 
 	@NotNull
 	@Override
 	public List<String> getTabCompletition(@NotNull final String[] args) {
-		return Collections.emptyList();
+		return args.length == 2 ? Collections.singletonList("show") : Collections.emptyList();
 	}
 	
 }
\ No newline at end of file
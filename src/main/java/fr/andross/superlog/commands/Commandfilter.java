@@ -18,16 +18,23 @@
 package fr.andross.superlog.commands;
 
 import fr.andross.superlog.SuperLog;
+import fr.andross.superlog.log.LogClock;
+import fr.andross.superlog.log.LogSearch;
+import fr.andross.superlog.log.LogTimeWindow;
 import fr.andross.superlog.utils.Utils;
 import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
+import org.bukkit.scheduler.BukkitTask;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -37,11 +44,15 @@ import java.util.stream.Stream;
  * @author Andross
  */
 public class Commandfilter implements ICommand {
+    private static final Map<String, LogSearch> searches = new ConcurrentHashMap<>(); // running searches, by sender name
     private final List<String> help = Stream.of(
             "&7Filtrer command argument:",
-            "&3/log filter &b<playerName> <eventName>&7: create a 'filtered.log' about playerName & the eventName)",
+            "&3/log filter &b<playerName> <eventName> [from] [to]&7: create a 'filtered.log' about playerName & the eventName)",
             "  &7- &b<playerName>: player name to filtrer",
-            "  &7- &b<eventName>: name of the event to filtrer"
+            "  &7- &b<eventName>: name of the event to filtrer (e.g: &eBlockBreak&7), &e*&7 for all events. Only event names are matched:",
+            "    &7to search a text in the logs, use &e/log query text~<text>",
+            "  &7- &b[from] [to]: time range, as &eHH:mm[:ss]&7 (today), &eyyyy-MM-dd&7 or &eyyyy-MM-ddTHH:mm[:ss]",
+            "&3/log filter &bcancel&7: cancel your running filter"
     ).map(Utils::color).collect(Collectors.toList());
 
     @Override
@@ -53,69 +64,100 @@ public class Commandfilter implements ICommand {
         }
 
         final String prefix = pl.getLogUtils().getColoredString("messages.prefix");
+        if (args.length == 2 && args[1].equalsIgnoreCase("cancel")) {
+            final LogSearch search = searches.get(sender.getName());
+            if (search == null) sender.sendMessage(prefix + Utils.color("&cYou don't have a running filter."));
+            else {
+                search.cancel();
+                sender.sendMessage(prefix + Utils.color("&eCancelling the filter..."));
+            }
+            return;
+        }
         if (args.length < 3) {
             help.forEach(l -> sender.sendMessage(prefix + l));
             return;
         }
+        if (searches.containsKey(sender.getName())) {
+            sender.sendMessage(prefix + Utils.color("&cYou already have a running filter. Use &e/log filter cancel&c to cancel it."));
+            return;
+        }
 
         final String playerName = args[1];
-        final String eventName = args[2];
+        final String eventName = args[2].equals("*") ? "" : args[2];
 
-        Bukkit.getScheduler().runTaskAsynchronously(pl, () -> {
+        // Time range
+        LogTimeWindow window = null;
+        if (args.length > 3) {
+            final LogClock clock = pl.getLogConfig().getSettings().getClock();
             try {
-                // Checking player log
-                final File folder = new File(pl.getDataFolder() + File.separator +
-                        "logs" + File.separator +
-                        "players" + File.separator +
-                        playerName + File.separator);
-                if (!folder.isDirectory()) throw new Exception("&cThe player &e" + playerName + "&c doesn't have logs.");
+                final long from = LogTimeWindow.parse(args[3], false, clock);
+                final long to = args.length > 4 ? LogTimeWindow.parse(args[4], true, clock) : Long.MAX_VALUE;
+                window = new LogTimeWindow(from, to, pl.getLogConfig().getRouter(), clock);
+            } catch (final IllegalArgumentException e) {
+                sender.sendMessage(prefix + Utils.color("&c" + e.getMessage()));
+                return;
+            }
+        }
 
-                // Processing
-                final List<String> lines = new ArrayList<>();
-                final File[] files = folder.listFiles();
-                if (files == null) throw new Exception("&cThe player &e" + playerName + "&c doesn't have logs.");
+        // Checking player log
+        final File folder = new File(pl.getDataFolder() + File.separator +
+                "logs" + File.separator +
+                "players" + File.separator +
+                playerName + File.separator);
+        final String logFormat = pl.getConfig().getString("logs-format");
+        if (logFormat == null) {
+            sender.sendMessage(prefix + Utils.color("&cInvalid '&elogs-format&c' in config."));
+            return;
+        }
+        final String logFormatExtension = logFormat.substring(logFormat.lastIndexOf("."));
+        final File filtered = new File(pl.getDataFolder() + File.separator + "logs_filtered" + File.separator, "filtered_" + playerName + "_" + (eventName.isEmpty() ? "all" : eventName) + ".log");
+        final LogTimeWindow searchWindow = window;
 
-                final String logFormat = pl.getConfig().getString("logs-format");
-                if (logFormat == null) throw new Exception("&cInvalid '&elogs-format&c' in config.");
-                final String logFormatExtension = logFormat.substring(logFormat.lastIndexOf("."));
-                for (final File file : files) {
-                    // Checking file
-                    int lastIndex = file.getName().lastIndexOf(".");
-                    if (lastIndex < 0) continue;
-                    if (!file.getName().substring(lastIndex).equals(logFormatExtension)) continue;
+        // Listing the log files off the main thread: a player may have thousands of them
+        Bukkit.getScheduler().runTaskAsynchronously(pl, () -> {
+            final File[] files = folder.listFiles(f -> LogSearch.isLogFile(f, logFormatExtension));
+            if (files == null || files.length == 0) {
+                Bukkit.getScheduler().scheduleSyncDelayedTask(pl, () -> sender.sendMessage(prefix + Utils.color("&cThe player &e" + playerName + "&c doesn't have logs.")));
+                return;
+            }
+            Arrays.sort(files);
 
-                    // Reading & filtering
-                    try (final BufferedReader br = new BufferedReader(new FileReader(file))){
-                        for (String line; (line = br.readLine()) != null;) {
-                            if (!line.contains(eventName)) continue;
-                            lines.add(line);
-                        }
-                    } catch (final Exception e) {
-                        sender.sendMessage(prefix + Utils.color("&cUnable to read " + file.getName()));
-                        if (pl.getLogManager().isDebug()) e.printStackTrace();
-                    }
-                }
+            // Matching logs are streamed into the filtered file
+            final LogSearch search = new LogSearch(Arrays.asList(files), LogSearch.ofEvent(eventName), searchWindow, filtered,
+                    Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)));
+            if (searches.putIfAbsent(sender.getName(), search) != null) {
+                Bukkit.getScheduler().scheduleSyncDelayedTask(pl, () -> sender.sendMessage(prefix + Utils.color("&cYou already have a running filter. Use &e/log filter cancel&c to cancel it.")));
+                return;
+            }
+
+            // Progress, every 5 seconds
+            final BukkitTask progress = Bukkit.getScheduler().runTaskTimer(pl, () -> sender.sendMessage(prefix + Utils.color("&7Filtering... &e" + (int) (search.getProgress() * 100) + "%&7 (&e"
+                    + search.getSearchedFiles() + "&7/&e" + search.getFiles() + "&7 files, &e" + search.getMatches() + "&7 logs found)")), 100L, 100L);
 
-                // Writing in file
-                if (lines.isEmpty()) throw new Exception("&cNo logs found for player &e" + playerName + "&c and event &e" + eventName + "&c.");
-                final File filtered = new File(pl.getDataFolder() + File.separator + "logs_filtered" + File.separator, "filtered_" + playerName + "_" + eventName + ".log");
-                final File directory = filtered.getParentFile();
-                if (!directory.exists()) directory.mkdirs();
-                if (filtered.isFile()) filtered.delete();
-                filtered.createNewFile();
-                final Writer writer = new OutputStreamWriter(new FileOutputStream(filtered, true), StandardCharsets.UTF_8);
-                for (final String newLine : lines) writer.append(newLine).append(System.lineSeparator());
-                writer.close();
-                throw new Exception("&2"+ filtered.getName() + " created, with &a" + lines.size() + " logs&2.");
-            } catch (final Exception e) {
-                Bukkit.getScheduler().scheduleSyncDelayedTask(pl, () -> sender.sendMessage(prefix + Utils.color(e.getMessage())));
+            String message;
+            try {
+                final long count = search.run();
+                if (count == 0) message = "&cNo logs found for player &e" + playerName + "&c and event &e" + args[2] + "&c.";
+                else message = "&2" + filtered.getName() + " created, with &a" + count + " logs&2.";
+            } catch (final CancellationException e) {
+                message = "&eFilter cancelled.";
+            } catch (final IOException e) {
+                message = "&cUnable to filter the logs: " + e.getMessage();
+                if (pl.getLogManager().isDebug()) e.printStackTrace();
+            } finally {
+                searches.remove(sender.getName());
             }
+            final String result = message;
+            Bukkit.getScheduler().scheduleSyncDelayedTask(pl, () -> {
+                progress.cancel();
+                sender.sendMessage(prefix + Utils.color(result));
+            });
         });
     }
 
     @NotNull
     @Override
     public List<String> getTabCompletition(@NotNull final String[] args) {
-        return Collections.emptyList();
+        return args.length == 2 ? Collections.singletonList("cancel") : Collections.emptyList();
     }
 }
@@ -29,6 +29,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 
 /**
@@ -71,7 +72,7 @@ public class Commandlive implements ICommand {
 		final String pName = p.getName();
 
 		// Getting senders for this target
-		final List<CommandSender> senders = pl.getLogManager().getLive().getOrDefault(pName, new ArrayList<>());
+		final List<CommandSender> senders = pl.getLogManager().getLive().getOrDefault(pName, new CopyOnWriteArrayList<>());
 
 		// Already logging, unlogging
 		if (senders.contains(sender)) {
@@ -0,0 +1,174 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.commands;
+
+import fr.andross.superlog.SuperLog;
+import fr.andross.superlog.log.LogQuery;
+import fr.andross.superlog.utils.Utils;
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Query command
+ * @version 1.2
+ * @author Andross
+ */
+public class Commandquery implements ICommand {
+	private static final int PAGE_SIZE = 10;
+	private static final Set<String> running = ConcurrentHashMap.newKeySet(); // senders running a query
+	private static final Map<String, List<String>> results = new ConcurrentHashMap<>(); // last results, by sender name, until quit or reload
+	private final List<String> help = Stream.of(
+			"&7Query command arguments:",
+			"&3/log query &b<clauses...>&7: search the logs of all players",
+			"  &7- &bkey=value&7, &bkey!=value&7, &bkey~text&7 (contains), &bkey in (a, b)&7, &bkey=min..max",
+			"  &7- keys: &bplayer&7, &bevent&7, &bworld&7, &bmaterial&7, &bx&7/&by&7/&bz&7, &btext&7, &bcancelled&7, &bfrom&7/&bto&7, &blimit&7, or a placeholder (e.g: &bblock.type&7)",
+			"  &7- e.g: &eevent in (BlockBreak, BlockPlace) material=DIAMOND_ORE y=0..16",
+			"&3/log query &bpage <number>&7: show a page of your last results"
+	).map(Utils::color).collect(Collectors.toList());
+
+	@Override
+	public void run(@NotNull final SuperLog pl, @NotNull final CommandSender sender, @NotNull final String[] args) {
+		if (!sender.hasPermission("superlog.commands.query")) {
+			final String noperm = pl.getLogUtils().getColoredString("messages.noperm");
+			if (noperm != null) sender.sendMessage(noperm);
+			return;
+		}
+
+		final String prefix = pl.getLogUtils().getColoredString("messages.prefix");
+		if (args.length < 2) {
+			help.forEach(l -> sender.sendMessage(prefix + l));
+			return;
+		}
+
+		// Page of the last results
+		if (args[1].equalsIgnoreCase("page")) {
+			final List<String> logs = results.get(sender.getName());
+			if (logs == null) {
+				sender.sendMessage(prefix + Utils.color("&cYou don't have query results."));
+				return;
+			}
+			int page;
+			try {
+				page = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+			} catch (final NumberFormatException e) {
+				page = 1;
+			}
+			showPage(sender, prefix, logs, page);
+			return;
+		}
+
+		if (!running.add(sender.getName())) {
+			sender.sendMessage(prefix + Utils.color("&cYou already have a running query."));
+			return;
+		}
+		final LogQuery query;
+		try {
+			query = LogQuery.parse(String.join(" ", Arrays.copyOfRange(args, 1, args.length)), pl.getLogConfig(),
+					Math.max(1, pl.getConfig().getInt("query.limit", 1000)), TimeUnit.SECONDS.toMillis(Math.max(1, pl.getConfig().getInt("query.time-budget", 10))));
+		} catch (final IllegalArgumentException e) {
+			running.remove(sender.getName());
+			sender.sendMessage(prefix + Utils.color("&c" + e.getMessage()));
+			return;
+		}
+		final String logFormat = pl.getConfig().getString("logs-format");
+		if (logFormat == null) {
+			running.remove(sender.getName());
+			sender.sendMessage(prefix + Utils.color("&cInvalid '&elogs-format&c' in config."));
+			return;
+		}
+		final String extension = logFormat.substring(logFormat.lastIndexOf("."));
+		final int threads = Math.max(1, pl.getConfig().getInt("query.threads", Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2))));
+
+		sender.sendMessage(prefix + Utils.color("&eQuerying the logs..."));
+		Bukkit.getScheduler().runTaskAsynchronously(pl, () -> {
+			final long start = System.nanoTime();
+			final ForkJoinPool pool = new ForkJoinPool(threads);
+			final List<String> logs;
+			try {
+				logs = query.run(new File(pl.getDataFolder(), "logs"), extension, pool);
+			} catch (final RuntimeException e) {
+				if (pl.getLogManager().isDebug()) e.printStackTrace();
+				Bukkit.getScheduler().scheduleSyncDelayedTask(pl, () -> sender.sendMessage(prefix + Utils.color("&cUnable to query the logs: " + e)));
+				return;
+			} finally {
+				pool.shutdown();
+				running.remove(sender.getName());
+			}
+			results.put(sender.getName(), logs);
+			final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+			Bukkit.getScheduler().scheduleSyncDelayedTask(pl, () -> {
+				sender.sendMessage(prefix + Utils.color("&2Found &a" + logs.size() + "&2 logs in &a" + millis + "&2 ms (&a" + query.getSearchedFiles() + "&2 files, &a" + (query.getSearchedBytes() >> 10) + "&2 KiB searched)."));
+				if (query.isTimedOut()) sender.sendMessage(prefix + Utils.color("&eTime budget spent: the results are partial."));
+				else if (query.isLimited()) sender.sendMessage(prefix + Utils.color("&eLimit of results reached: the results may be partial."));
+				if (!logs.isEmpty()) showPage(sender, prefix, logs, 1);
+			});
+		});
+	}
+
+	/**
+	 * Removing the last results of a sender
+	 * @param name the sender name
+	 */
+	public static void removeResults(@NotNull final String name) {
+		results.remove(name);
+	}
+
+	/**
+	 * Removing the last results of all senders
+	 */
+	public static void clearResults() {
+		results.clear();
+	}
+
+	/**
+	 * Showing a page of results
+	 * @param sender the sender
+	 * @param prefix the messages prefix
+	 * @param logs the results
+	 * @param page the page, starting at 1
+	 */
+	private void showPage(@NotNull final CommandSender sender, @NotNull final String prefix, @NotNull final List<String> logs, final int page) {
+		final int pages = Math.max(1, (logs.size() + PAGE_SIZE - 1) / PAGE_SIZE);
+		final int current = Math.max(1, Math.min(pages, page));
+		sender.sendMessage(prefix + Utils.color("&7Results, page &e" + current + "&7/&e" + pages + "&7:"));
+		final int end = Math.min(logs.size(), current * PAGE_SIZE);
+		for (int i = (current - 1) * PAGE_SIZE; i < end; i++) sender.sendMessage(Utils.color("&8" + (i + 1) + ". &f") + logs.get(i));
+		if (current < pages) sender.sendMessage(prefix + Utils.color("&7Next page: &e/log query page " + (current + 1)));
+	}
+
+	@NotNull
+	@Override
+	public List<String> getTabCompletition(@NotNull final String[] args) {
+		if (args.length == 2) return Arrays.asList("page", "player=", "event=", "world=", "material=", "x=", "y=", "z=", "text~", "from=", "to=", "limit=");
+		return Collections.emptyList();
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.commands;
+
+import fr.andross.superlog.SuperLog;
+import fr.andross.superlog.log.LogGovernor;
+import fr.andross.superlog.log.LogManager;
+import fr.andross.superlog.log.LogPriority;
+import fr.andross.superlog.log.LogProfiler;
+import fr.andross.superlog.log.LogStats;
+import fr.andross.superlog.utils.EventCatalog;
+import fr.andross.superlog.utils.Utils;
+import org.bukkit.command.CommandSender;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command stats
+ * @version 1.2
+ * @author Andross
+ */
+public class Commandstats implements ICommand {
+
+	@Override
+	public void run(@NotNull final SuperLog pl, @NotNull final CommandSender sender, @NotNull final String[] args) {
+		if (!sender.hasPermission("superlog.commands.stats")) {
+			final String noperm = pl.getLogUtils().getColoredString("messages.noperm");
+			if (noperm != null) sender.sendMessage(noperm);
+			return;
+		}
+
+		final String prefix = pl.getLogUtils().getColoredString("messages.prefix");
+		final LogStats stats = pl.getLogManager().getStats();
+		sender.sendMessage(prefix + Utils.color("&7Time spent per tick (average over the last second):"));
+		sender.sendMessage(prefix + Utils.color("  &7- Capture (event thread): &e" + stats.getCaptureNanosPerTick() + "&7 ns"));
+		sender.sendMessage(prefix + Utils.color("  &7- Render (log worker): &e" + stats.getRenderNanosPerTick() + "&7 ns"));
+		sender.sendMessage(prefix + Utils.color("&7Events waiting to be rendered: &e" + pl.getLogManager().getQueueSize()));
+		sender.sendMessage(prefix + Utils.color("&7Events dropped (too many waiting): &e" + pl.getLogManager().getDropped()));
+		sender.sendMessage(prefix + Utils.color("&7Open log files: &e" + pl.getLogManager().getOpenFiles()));
+		sender.sendMessage(prefix + Utils.color("&7Events loaded in: &e" + TimeUnit.NANOSECONDS.toMillis(pl.getLogConfig().getLoadTime()) + "&7 ms (&e" + EventCatalog.size() + "&7 events in catalog)"));
+
+		// Memory
+		final LogManager manager = pl.getLogManager();
+		sender.sendMessage(prefix + Utils.color("&7Pending memory: &e" + (manager.getPendingMemory() >> 10) + "&7 / &e" + (manager.getMemoryBudget() >> 10) + "&7 KiB (overflow: &e" + manager.getOverflowPolicy().name().toLowerCase() + "&7)"));
+		sender.sendMessage(prefix + Utils.color("  &7- Dropped: &e" + manager.getMemoryDropped() + "&7, sampled out: &e" + manager.getSampledOut() + "&7, blocked: &e" + manager.getBlocked()));
+
+		// Load governor
+		final LogGovernor governor = manager.getGovernor();
+		sender.sendMessage(prefix + Utils.color("&7Load governor: " + (governor.isEnabled() ? "&aenabled" : "&cdisabled") + "&7, level: &e" + governor.getLevel()
+				+ "&7 (SuperLog: &e" + String.format("%.2f", governor.getLoad()) + "&7% of the tick, TPS: &e" + String.format("%.1f", governor.getTps()) + "&7)"));
+		final StringBuilder tiers = new StringBuilder();
+		for (final LogPriority priority : LogPriority.values()) {
+			if (tiers.length() > 0) tiers.append("&7, ");
+			tiers.append("&e").append(priority.name().toLowerCase()).append("&7: &e").append(governor.getTier(priority).name().toLowerCase());
+		}
+		sender.sendMessage(prefix + Utils.color("  &7- Tiers: " + tiers));
+		sender.sendMessage(prefix + Utils.color("  &7- Sampled out: &e" + governor.getDegraded(LogGovernor.Tier.SAMPLED) + "&7, only counted: &e" + governor.getDegraded(LogGovernor.Tier.COUNTS) + "&7, not logged: &e" + governor.getDegraded(LogGovernor.Tier.OFF)));
+		for (final String transition : governor.getTransitions()) sender.sendMessage(prefix + Utils.color("  &7- " + transition));
+
+		// Top offenders
+		final LogProfiler profiler = manager.getProfiler();
+		final LogProfiler.Histogram routing = profiler.getRouting();
+		sender.sendMessage(prefix + Utils.color("&7Routing (log worker): &e" + routing.getPercentile(0.5) + "&7 ns p50, &e" + routing.getPercentile(0.99) + "&7 ns p99"));
+		final List<LogProfiler.EventProfile> offenders = profiler.getTopOffenders(5);
+		if (!offenders.isEmpty()) sender.sendMessage(prefix + Utils.color("&7Top events (time spent in SuperLog):"));
+		for (final LogProfiler.EventProfile profile : offenders) {
+			sender.sendMessage(prefix + Utils.color("  &7- &e" + profile.getName() + "&7: &e" + TimeUnit.NANOSECONDS.toMillis(profile.getTotalNanos()) + "&7 ms, accepted: &e" + profile.getCount(LogProfiler.Outcome.ACCEPTED)
+					+ "&7, ignored: &e" + profile.getCount(LogProfiler.Outcome.IGNORED) + "&7, sampled: &e" + profile.getCount(LogProfiler.Outcome.SAMPLED)
+					+ "&7, coalesced: &e" + profile.getCount(LogProfiler.Outcome.COALESCED) + "&7, degraded: &e" + profile.getCount(LogProfiler.Outcome.DEGRADED)));
+			sender.sendMessage(prefix + Utils.color("    &7serialize: &e" + profile.getSerialization().getPercentile(0.5) + "&7/&e" + profile.getSerialization().getPercentile(0.99)
+					+ "&7 ns, enqueue: &e" + profile.getEnqueue().getPercentile(0.5) + "&7/&e" + profile.getEnqueue().getPercentile(0.99) + "&7 ns (p50/p99)"));
+		}
+
+		// Flushes
+		final long flushes = stats.getFlushes();
+		sender.sendMessage(prefix + Utils.color("&7Flushes: &e" + flushes + "&7 (&e" + stats.getFlushedLines() + "&7 lines, &e" + stats.getFlushedFiles() + "&7 appends)"));
+		if (flushes == 0) return;
+		final StringBuilder reasons = new StringBuilder();
+		for (final LogStats.FlushReason reason : LogStats.FlushReason.values()) {
+			final long count = stats.getFlushes(reason);
+			if (count == 0) continue;
+			if (reasons.length() > 0) reasons.append("&7, ");
+			reasons.append("&e").append(reason.name().toLowerCase()).append("&7: &e").append(count);
+		}
+		sender.sendMessage(prefix + Utils.color("  &7- Reasons: " + reasons));
+		final long[] sizes = stats.getBatchSizes();
+		sender.sendMessage(prefix + Utils.color("  &7- Lines per flush: &e" + (stats.getFlushedLines() / flushes) + "&7 average, &e" + stats.getLargestBatch() + "&7 largest"));
+		sender.sendMessage(prefix + Utils.color("  &7- Batch sizes: &e1&7: &e" + sizes[0] + "&7, &e<=10&7: &e" + sizes[1] + "&7, &e<=100&7: &e" + sizes[2] + "&7, &e<=1000&7: &e" + sizes[3] + "&7, &e>1000&7: &e" + sizes[4]));
+	}
+
+	@NotNull
+	@Override
+	public List<String> getTabCompletition(@NotNull final String[] args) {
+		return Collections.emptyList();
+	}
+
+}
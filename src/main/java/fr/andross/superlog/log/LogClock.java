@@ -0,0 +1,187 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalQueries;
+
+/**
+ * Thread safe clock, formatting the log times.
+ * The formatted strings are cached for the current second, so formatting
+ * a time of the current second does not allocate anything.
+ * @version 1.2
+ * @author Andross
+ */
+public final class LogClock {
+    private static final DateTimeFormatter LIVE = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("dd");
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("MM");
+    private static final DateTimeFormatter YEAR = DateTimeFormatter.ofPattern("yy");
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final DateTimeFormatter format;
+    private final boolean subSecond;
+    private volatile Second current;
+
+    /**
+     * Creating a clock
+     * @param pattern the log time pattern (e.g: HH:mm:ss)
+     * @throws IllegalArgumentException if the pattern is invalid
+     */
+    public LogClock(@NotNull final String pattern) throws IllegalArgumentException {
+        format = DateTimeFormatter.ofPattern(pattern);
+        // Fractions of second can not be cached per second
+        final String fields = pattern.replaceAll("'[^']*'", "");
+        subSecond = fields.indexOf('S') >= 0 || fields.indexOf('n') >= 0 || fields.indexOf('N') >= 0 || fields.indexOf('A') >= 0;
+        try {
+            current = new Second(Math.floorDiv(System.currentTimeMillis(), 1000L)); // also checks that the pattern can be formatted
+        } catch (final DateTimeException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Get the formatted time for logs
+     * @param time the time, in milliseconds
+     * @return log time
+     */
+    @NotNull
+    public String getLogTime(final long time) {
+        if (subSecond) return format.format(Instant.ofEpochMilli(time).atZone(zone));
+        return at(time).logTime;
+    }
+
+    /**
+     * Get the formatted time for live logs (HH:mm:ss)
+     * @param time the time, in milliseconds
+     * @return live log time
+     */
+    @NotNull
+    public String getLiveTime(final long time) {
+        return at(time).liveTime;
+    }
+
+    /**
+     * Get the day of month (dd)
+     * @param time the time, in milliseconds
+     * @return the day
+     */
+    @NotNull
+    public String getDay(final long time) {
+        return at(time).day;
+    }
+
+    /**
+     * Get the month (MM)
+     * @param time the time, in milliseconds
+     * @return the month
+     */
+    @NotNull
+    public String getMonth(final long time) {
+        return at(time).month;
+    }
+
+    /**
+     * Get the year (yy)
+     * @param time the time, in milliseconds
+     * @return the year
+     */
+    @NotNull
+    public String getYear(final long time) {
+        return at(time).year;
+    }
+
+    /**
+     * Get the day, as days since the epoch, in the server time zone
+     * @param time the time, in milliseconds
+     * @return the epoch day
+     */
+    public long getEpochDay(final long time) {
+        return at(time).epochDay;
+    }
+
+    /**
+     * Parsing a formatted log time
+     * @param text the log time
+     * @param day the day of the log file, used if the log time has no date; null if unknown
+     * @return the time, in milliseconds; Long.MIN_VALUE if it can not be parsed
+     */
+    public long parseLogTime(@NotNull final String text, @Nullable final LocalDate day) {
+        try {
+            final TemporalAccessor parsed = format.parse(text);
+            final LocalDate date = parsed.query(TemporalQueries.localDate());
+            final LocalTime time = parsed.query(TemporalQueries.localTime());
+            if ((date == null && day == null) || time == null) return Long.MIN_VALUE;
+            return ZonedDateTime.of(date == null ? day : date, time, zone).toInstant().toEpochMilli();
+        } catch (final DateTimeParseException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Get the server time zone, used to format the log times
+     * @return the time zone
+     */
+    @NotNull
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    /**
+     * Get the cached strings of a second, refreshed at most once per second
+     * @param time the time, in milliseconds
+     * @return the cached second
+     */
+    @NotNull
+    private Second at(final long time) {
+        final long second = Math.floorDiv(time, 1000L);
+        final Second cached = current;
+        if (cached.second == second) return cached;
+
+        // Racing threads may compute the same second: the result is the same
+        final Second computed = new Second(second);
+        if (second > cached.second) current = computed;
+        return computed;
+    }
+
+    private final class Second {
+        private final long second;
+        private final String logTime;
+        private final String liveTime;
+        private final String day;
+        private final String month;
+        private final String year;
+        private final long epochDay;
+
+        private Second(final long second) {
+            this.second = second;
+            final ZonedDateTime date = Instant.ofEpochSecond(second).atZone(zone);
+            logTime = format.format(date);
+            liveTime = LIVE.format(date);
+            day = DAY.format(date);
+            month = MONTH.format(date);
+            year = YEAR.format(date);
+            epochDay = date.toLocalDate().toEpochDay();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Coalescing high frequency events (e.g: moves) of the same player or entity.
+ * The events are absorbed into a window, and only logged when a boundary is crossed
+ * or a distance/time threshold is reached, as one "moved from A to B over N ticks" log.
+ * The last absorbed event is captured into a record when absorbed: a window still waiting is logged with
+ * this record when its player or entity stops (idle), quits, changes world, or when the plugin is disabled or reloaded.
+ * Only used on the main thread.
+ * @version 1.2
+ * @author Andross
+ */
+public final class LogCoalescer {
+    /** Ticks without event after which a player or entity is considered stopped, and its window logged **/
+    public static final long IDLE_TICKS = 100;
+    private final Boundary boundary;
+    private final double distanceSquared;
+    private final long maxTicks;
+    private final Map<UUID, Window> windows = new HashMap<>();
+
+    /**
+     * Boundary which, when crossed, logs the coalesced events
+     */
+    public enum Boundary {
+        NONE,
+        BLOCK,
+        CHUNK
+    }
+
+    /**
+     * Creating a coalescer
+     * @param boundary boundary which, when crossed, logs the coalesced events
+     * @param distance distance, in blocks, which logs the coalesced events (0 to disable)
+     * @param maxTicks time, in ticks, which logs the coalesced events (0 to disable)
+     */
+    public LogCoalescer(@NotNull final Boundary boundary, final double distance, final long maxTicks) {
+        this.boundary = boundary;
+        this.distanceSquared = distance * distance;
+        this.maxTicks = maxTicks;
+    }
+
+    /**
+     * Adding an event into the window of its player or entity
+     * @param key the player or entity unique id
+     * @param from the location before the event
+     * @param to the location after the event
+     * @param tick the current tick
+     * @param executor the executor logging this event
+     * @return the window holding the event: complete if it must be logged now, otherwise the event is absorbed
+     */
+    @NotNull
+    public Window offer(@NotNull final UUID key, @NotNull final Location from, @NotNull final Location to, final long tick,
+                        @NotNull final LogExecutor executor) {
+        Window window = windows.get(key);
+        if (window == null) {
+            window = new Window(from, tick);
+            windows.put(key, window);
+        }
+        window.count++;
+        window.lastTick = tick;
+        window.record = null; // captured again for this event, if absorbed
+        window.executor = executor;
+        if (!isReached(window, to, tick)) return window;
+
+        // Next window starts where this one ends
+        window.complete = true;
+        windows.put(key, new Window(to, tick));
+        return window;
+    }
+
+    private boolean isReached(@NotNull final Window window, @NotNull final Location to, final long tick) {
+        if (window.world != to.getWorld()) return true;
+        if (maxTicks > 0 && tick - window.startTick >= maxTicks) return true;
+        final double dx = to.getX() - window.x, dy = to.getY() - window.y, dz = to.getZ() - window.z;
+        if (distanceSquared > 0 && dx * dx + dy * dy + dz * dz >= distanceSquared) return true;
+        switch (boundary) {
+            case BLOCK: return to.getBlockX() != window.blockX || to.getBlockY() != window.blockY || to.getBlockZ() != window.blockZ;
+            case CHUNK: return to.getBlockX() >> 4 != window.blockX >> 4 || to.getBlockZ() >> 4 != window.blockZ >> 4;
+            default: return false;
+        }
+    }
+
+    /**
+     * Logging and forgetting the windows of the players or entities without event since {@link #IDLE_TICKS}
+     * @param tick the current tick
+     */
+    public void flushIdle(final long tick) {
+        final List<Window> idle = new ArrayList<>();
+        final Iterator<Window> i = windows.values().iterator();
+        while (i.hasNext()) {
+            final Window window = i.next();
+            if (tick - window.lastTick < IDLE_TICKS) continue;
+            i.remove();
+            idle.add(window);
+        }
+        for (final Window window : idle) emit(window);
+    }
+
+    /**
+     * Logging and forgetting the window of a player or entity (e.g: quit, world changed)
+     * @param key the player or entity unique id
+     */
+    public void flush(@NotNull final UUID key) {
+        final Window window = windows.remove(key);
+        if (window != null) emit(window);
+    }
+
+    /**
+     * Logging and forgetting all windows
+     */
+    public void flushAll() {
+        final List<Window> all = new ArrayList<>(windows.values());
+        windows.clear();
+        for (final Window window : all) emit(window);
+    }
+
+    private static void emit(@NotNull final Window window) {
+        // Empty windows are the start of the next window, after a logged one
+        if (window.record != null && window.executor != null) window.executor.log(window.record);
+    }
+
+    /**
+     * Coalesced events of a player or an entity
+     */
+    public static final class Window {
+        private final World world;
+        private final double x, y, z;
+        private final int blockX, blockY, blockZ;
+        private final long startTick;
+        private long lastTick;
+        private int count = 0;
+        private boolean complete = false;
+        private LogRecord record = null; // last absorbed event, null if not logged
+        private LogExecutor executor = null;
+
+        private Window(@NotNull final Location start, final long tick) {
+            world = start.getWorld();
+            x = start.getX();
+            y = start.getY();
+            z = start.getZ();
+            blockX = start.getBlockX();
+            blockY = start.getBlockY();
+            blockZ = start.getBlockZ();
+            startTick = tick;
+            lastTick = tick;
+        }
+
+        /**
+         * Get the world where the window started
+         * @return the world, null if unknown
+         */
+        @Nullable
+        public World getWorld() {
+            return world;
+        }
+
+        /**
+         * Get the block X where the window started
+         * @return the block X
+         */
+        public int getBlockX() {
+            return blockX;
+        }
+
+        /**
+         * Get the block Y where the window started
+         * @return the block Y
+         */
+        public int getBlockY() {
+            return blockY;
+        }
+
+        /**
+         * Get the block Z where the window started
+         * @return the block Z
+         */
+        public int getBlockZ() {
+            return blockZ;
+        }
+
+        /**
+         * Get the duration of the window
+         * @param tick the current tick
+         * @return the duration, in ticks
+         */
+        public long getTicks(final long tick) {
+            return tick - startTick;
+        }
+
+        /**
+         * Get the amount of coalesced events
+         * @return the amount of events
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * If this window is complete, and must be logged with its last event
+         * @return true if complete, otherwise false if its last event is absorbed
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        /**
+         * Set the record of the last event absorbed by this window, logged if the window is flushed while waiting
+         * @param record the captured event, null if it should not be logged
+         */
+        void setRecord(@Nullable final LogRecord record) {
+            this.record = record;
+        }
+    }
+}
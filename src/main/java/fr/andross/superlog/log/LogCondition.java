@@ -0,0 +1,102 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+
+/**
+ * IGNORED/LOGGED conditions of an event or of a field, compiled into
+ * case insensitive hash sets, so a value is matched without allocation.
+ * @version 1.2
+ * @author Andross
+ */
+public final class LogCondition {
+    private final Values ignored;
+    private final Values logged;
+
+    private LogCondition(@Nullable final Values ignored, @Nullable final Values logged) {
+        this.ignored = ignored;
+        this.logged = logged;
+    }
+
+    /**
+     * Compiling conditions
+     * @param ignored values to ignore, null if none
+     * @param logged values to log only, null if none
+     * @return the compiled condition, null if there is no condition
+     */
+    @Nullable
+    public static LogCondition of(@Nullable final Collection<String> ignored, @Nullable final Collection<String> logged) {
+        if (ignored == null && logged == null) return null;
+        return new LogCondition(ignored == null ? null : new Values(ignored), logged == null ? null : new Values(logged));
+    }
+
+    /**
+     * Checking if a value should not be logged
+     * @param value value to check
+     * @return true if this value should not be logged, otherwise false
+     */
+    public boolean isIgnored(@Nullable final String value) {
+        if (value == null) return false;
+        if (ignored != null && ignored.contains(value)) return true;
+        return logged != null && !logged.contains(value);
+    }
+
+    /**
+     * Open addressing hash set of strings, ignoring case
+     */
+    private static final class Values {
+        private final String[] table;
+        private final int mask;
+
+        private Values(@NotNull final Collection<String> values) {
+            int capacity = 4;
+            while (capacity < values.size() * 2) capacity <<= 1;
+            table = new String[capacity];
+            mask = capacity - 1;
+            for (final String value : values) {
+                int i = hash(value) & mask;
+                while (table[i] != null) {
+                    if (table[i].equalsIgnoreCase(value)) break;
+                    i = (i + 1) & mask;
+                }
+                table[i] = value;
+            }
+        }
+
+        private boolean contains(@NotNull final String value) {
+            int i = hash(value) & mask;
+            String s;
+            while ((s = table[i]) != null) {
+                if (s.equalsIgnoreCase(value)) return true;
+                i = (i + 1) & mask;
+            }
+            return false;
+        }
+
+        private static int hash(@NotNull final String s) {
+            int h = 0;
+            for (int i = 0; i < s.length(); i++)
+                h = 31 * h + Character.toLowerCase(Character.toUpperCase(s.charAt(i)));
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -27,17 +27,17 @@ import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.event.Event;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
 import org.bukkit.event.player.PlayerCommandPreprocessEvent;
+import org.bukkit.event.player.PlayerEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.plugin.EventExecutor;
 import org.bukkit.plugin.Plugin;
 import org.jetbrains.annotations.NotNull;
 
 import java.lang.reflect.Field;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -46,11 +46,14 @@ import java.util.stream.Collectors;
  * @author Andross
  */
 public final class LogConfig {
-    private final Set<String> alertCommands = new HashSet<>();
-    private final boolean isCitizensEnabled;
-    private final boolean bukkitNewApi;
+    // Placeholders not related to a field
+    private static final Set<String> reservedKeys = new HashSet<>(Arrays.asList("NAME", "TYPE", "HEALTH", "IP", "LOCWORLD", "LOCX", "LOCY", "LOCZ", "LASTDEATHCAUSE", "LASTDEATHBY",
+            "COALESCED.COUNT", "COALESCED.TICKS"));
+    private final LogSettings settings;
+    private final LogRouter router;
+    private final Map<String, LoggedEvent> loggedEvents = new LinkedHashMap<>();
     private boolean enabled = true;
-    private DateFormat dateFormat = new SimpleDateFormat("HH:mm:ss");
+    private long loadTime = 0;
 
     /**
      * Should not be instantiated. Use {@link SuperLog#getLogConfig()} instead.
@@ -58,13 +61,15 @@ public final class LogConfig {
      * @param sender the sender
      */
     public LogConfig(@NotNull final SuperLog pl, @NotNull final CommandSender sender) {
+        final long start = System.nanoTime();
+
         // Is Citizens enabled?
         final Plugin citizensPlugin = pl.getServer().getPluginManager().getPlugin("Citizens");
-        isCitizensEnabled = citizensPlugin != null && citizensPlugin.isEnabled();
+        final boolean isCitizensEnabled = citizensPlugin != null && citizensPlugin.isEnabled();
 
         // 1.13+?
         final String bukkitVersion = Bukkit.getBukkitVersion();
-        bukkitNewApi = bukkitVersion.contains("1.13") || bukkitVersion.contains("1.14") || bukkitVersion.contains("1.15") || bukkitVersion.contains("1.16");
+        final boolean bukkitNewApi = bukkitVersion.contains("1.13") || bukkitVersion.contains("1.14") || bukkitVersion.contains("1.15") || bukkitVersion.contains("1.16");
 
         // Config
         final FileConfiguration config = pl.getConfig();
@@ -77,17 +82,16 @@ public final class LogConfig {
         }
 
         // Date format
+        LogClock clock = new LogClock("HH:mm:ss");
         final String dateFormatString = config.getString("date-format");
         if (dateFormatString == null) {
             sender.sendMessage(prefix + Utils.color("&c[Config] Unknown or not set '&edate-format&c'. Using default formatting instead (HH:mm:ss)."));
         } else {
             try {
-                final DateFormat testFormat = new SimpleDateFormat(dateFormatString);
-                testFormat.format(new Date());
-                dateFormat = testFormat;
-            } catch (final Exception e) {
-                dateFormat = new SimpleDateFormat("HH:mm:ss");
-                sender.sendMessage(prefix + Utils.color("&c[Config] Invalid '&edate-format&c'. Using default formatting instead (HH:mm:ss)."));
+                clock = new LogClock(dateFormatString);
+            } catch (final IllegalArgumentException e) {
+                // Patterns use the java.time letters since v1.2: old SimpleDateFormat patterns may not be valid anymore
+                sender.sendMessage(prefix + Utils.color("&c[Config] Invalid '&edate-format&c' (&e" + e.getMessage() + "&c). Using default formatting instead (HH:mm:ss)."));
             }
         }
 
@@ -105,6 +109,7 @@ public final class LogConfig {
             config.set("logs-format", "{DAY}-{MONTH}-{YEAR}_{TYPE}.log");
             sender.sendMessage(prefix + Utils.color("&c[Config] '&elogs-format&c' contains invalid file name character. Using default."));
         }
+        router = new LogRouter(pl.getDataFolder(), config.getString("logs-format", "{DAY}-{MONTH}-{YEAR}_{TYPE}.log"), clock);
 
         // Logs live format
         String logsLiveFormat = config.getString("logs-live-format");
@@ -114,7 +119,13 @@ public final class LogConfig {
         }
 
         // Getting all commands that should be alerted when used
-        alertCommands.addAll(config.getStringList("commands-alert.list").stream().map(String::toLowerCase).collect(Collectors.toList()));
+        final Set<String> alertCommands = config.getStringList("commands-alert.list").stream().map(String::toLowerCase).collect(Collectors.toSet());
+
+        // Snapshot of the validated config, used by the logging path
+        settings = new LogSettings(config.getInt("save-delay"), clock, config.getString("logs-live-format", "&7&o[{TIME}][{EVENT}] {LOG}"),
+                alertCommands, config.getString("commands-alert.message"), prefix == null ? "" : prefix,
+                pl.getLogUtils().getColoredString("messages.logs-saved"),
+                config.getBoolean("logs-in-console"), config.getBoolean("logs-in-game"), isCitizensEnabled, bukkitNewApi);
 
 
         ///////////////////////////////
@@ -142,7 +153,7 @@ public final class LogConfig {
 
         // For each event
         int count = 0;
-        final Pattern argsPattern = Pattern.compile("\\{(.*?)\\}"); // e.g: player.name
+        final List<LogCoalescer> coalescers = new ArrayList<>();
         events: for (final String eventName : events.getKeys(false)) {
             // Checking if event is enabled
             final ConfigurationSection event = events.getConfigurationSection(eventName);
@@ -160,40 +171,63 @@ public final class LogConfig {
             String message = event.getString("message");
             if (message == null || message.isEmpty()) message = "executed.";
 
-            // Initialize args
-            final Map<String, List<String>> conditions = new HashMap<>();
-            Field[] fields = null;
-
-            // Loading args from message
-            final Matcher m = argsPattern.matcher(message);
-            final List<String> args = new ArrayList<>();
-            final List<Field> fieldsSet = new ArrayList<>();
-            while (m.find()) {
-                String arg = m.group(1);
-                if (!arg.matches("(?i)name|type|health|ip|locworld|locx|locy|locz|lastdeathcause|lastdeathby")) { // Loading fields
-                    final String field = arg.contains(".") ? arg.split("\\.")[0] : arg;
-                    Field f = null;
-
-                    for (final Field fieldsInClass : Utils.getAllFields(eventClass)) {
-                        if (fieldsInClass.getName().equalsIgnoreCase(field)) {
-                            fieldsInClass.setAccessible(true);
-                            fieldsSet.add(fieldsInClass);
-                            f = fieldsInClass;
-                            break;
-                        }
-                    }
+            // Loading event priority
+            LogPriority logPriority = LogPriority.NORMAL;
+            final String priorityName = event.getString("priority");
+            if (priorityName != null) {
+                final LogPriority configPriority = LogPriority.of(priorityName);
+                if (configPriority != null) logPriority = configPriority;
+                else sender.sendMessage(prefix + Utils.color("&c[Config] Invalid priority '&e" + priorityName + "&c' for event '&e" + eventName + "&c'. Using normal."));
+            }
 
-                    if (f == null) sender.sendMessage(prefix + Utils.color("&c[Config] Can not found field '&e" + field + "&c' for event '&e" + eventName + "&c'."));
+            // Loading event sample rate
+            int sampleRate = 1;
+            if (event.contains("sample-rate")) {
+                sampleRate = event.getInt("sample-rate");
+                if (!event.isInt("sample-rate") || sampleRate < 1) {
+                    sender.sendMessage(prefix + Utils.color("&c[Config] Invalid sample rate for event '&e" + eventName + "&c'. Logging all events."));
+                    sampleRate = 1;
                 }
-                arg = arg.contains(".") ? arg.split("\\.")[1].toUpperCase() : arg.toUpperCase();
-                args.add(arg);
             }
-            if (!args.isEmpty()) conditions.put("ARGS", args);
+
+            // Loading event coalescing
+            LogCoalescer coalescer = null;
+            final ConfigurationSection coalesce = event.getConfigurationSection("coalesce");
+            if (coalesce != null) {
+                LogCoalescer.Boundary boundary = LogCoalescer.Boundary.CHUNK;
+                try {
+                    boundary = LogCoalescer.Boundary.valueOf(coalesce.getString("boundary", "CHUNK").trim().toUpperCase());
+                } catch (final IllegalArgumentException e) {
+                    sender.sendMessage(prefix + Utils.color("&c[Config] Invalid coalesce boundary for event '&e" + eventName + "&c'. Using chunk."));
+                }
+                coalescer = new LogCoalescer(boundary, Math.max(0, coalesce.getDouble("distance", 0)), Math.max(0, coalesce.getLong("ticks", 100)));
+            }
+
+            // Initialize conditions
+            final Map<String, List<String>> conditions = new HashMap<>();
+            LogField[] fields = null;
+
+            // Compiling the message, and loading fields from its placeholders
+            final LogTemplate template = new LogTemplate(message);
+            final Set<Field> fieldsSet = new LinkedHashSet<>();
+            for (int slot = 0; slot < template.size(); slot++) {
+                final String key = template.getKey(slot);
+                if (reservedKeys.contains(key)) continue;
+
+                // Loading fields
+                final String field = template.getPrefix(slot) == null ? key : template.getPrefix(slot);
+                final Field f = Utils.getField(eventClass, field);
+                if (f != null) fieldsSet.add(f);
+                else sender.sendMessage(prefix + Utils.color("&c[Config] Can not found field '&e" + field + "&c' for event '&e" + eventName + "&c'."));
+            }
 
             // Loading conditions
             for (final String condition : event.getKeys(false)) {
                 if (condition.equalsIgnoreCase("enabled")) continue;
                 if (condition.equalsIgnoreCase("message")) continue;
+                if (condition.equalsIgnoreCase("priority")) continue;
+                if (condition.equalsIgnoreCase("sample-rate")) continue;
+                if (condition.equalsIgnoreCase("coalesce")) continue;
 
                 List<String> list;
                 if (!event.isList(condition)) { // Try to get conditions from a String
@@ -211,35 +245,39 @@ public final class LogConfig {
                 if (list.isEmpty()) continue;
                 if (condition.contains("-")) { // Field condition
                     final String field = condition.split("-")[0];
-                    Field f = null;
-                    for (final Field fieldsInClass : Utils.getAllFields(eventClass)) {
-                        if (fieldsInClass.getName().equalsIgnoreCase(field)) {
-                            if (!fieldsSet.contains(fieldsInClass)) {
-                                fieldsInClass.setAccessible(true);
-                                fieldsSet.add(fieldsInClass);
-                            }
-                            f = fieldsInClass;
-                            break;
-                        }
-                    }
-                    if (f == null) {
+                    final Field f = Utils.getField(eventClass, field);
+                    if (f != null) fieldsSet.add(f);
+                    else {
                         sender.sendMessage(prefix + Utils.color("&c[Config] Unknown condition '&e" + condition + "&c': unknown field '&e" + field + "&c' for event '&e" + eventName + "&c'."));
                         continue events;
                     }
                 }
                 final List<String> conditionsList = new ArrayList<>();
-                for (final String s : list) conditionsList.add(s.toUpperCase());
+                for (final String s : list) if (!s.trim().isEmpty()) conditionsList.add(s.trim());
                 if (!conditionsList.isEmpty()) conditions.put(condition.toUpperCase(), conditionsList);
             }
 
-            // Saving fields
-            if (!fieldsSet.isEmpty()) fields = fieldsSet.toArray(new Field[0]);
+            // Compiling fields
+            if (!fieldsSet.isEmpty()) {
+                final List<LogField> logFields = new ArrayList<>();
+                for (final Field f : fieldsSet) {
+                    try {
+                        final String fieldName = f.getName().toUpperCase();
+                        final LogCondition fieldCondition = LogCondition.of(conditions.get(fieldName + "-IGNORED"), conditions.get(fieldName + "-LOGGED"));
+                        logFields.add(new LogField(f, template, fieldCondition));
+                    } catch (final Exception e) {
+                        sender.sendMessage(prefix + Utils.color("&c[Config] Can not access field '&e" + f.getName() + "&c' for event '&e" + eventName + "&c'."));
+                    }
+                }
+                if (!logFields.isEmpty()) fields = logFields.toArray(new LogField[0]);
+            }
 
             // Creating the LogEventConfig
-            final LoggedEvent loggedEvent = new LoggedEvent(message, conditions, fields);
+            final LogCondition condition = LogCondition.of(conditions.get("IGNORED"), conditions.get("LOGGED"));
+            final LoggedEvent loggedEvent = new LoggedEvent(template, condition, fields, logPriority, sampleRate, coalescer);
 
             // Creating the EventExecutor method, based on event type
-            final EventExecutor eventExecutor = pl.getLogUtils().createEventExecutor(eventClass, loggedEvent);
+            final EventExecutor eventExecutor = LogExecutor.of(pl, eventClass, loggedEvent);
             if (eventExecutor == null) {
                 sender.sendMessage(prefix + Utils.color("&c[Config] Event '&e" + eventName + "&c' is not loggable/supported."));
                 continue;
@@ -249,15 +287,28 @@ public final class LogConfig {
             // Priority monitor for all, except for the PlayerCommandPreprocessEvent, which have to be started firstly
             final EventPriority priority = eventName.equals("PlayerCommandPreprocessEvent") ? EventPriority.LOWEST : EventPriority.MONITOR;
             Bukkit.getPluginManager().registerEvent(eventClass, listener, priority, eventExecutor, pl);
+            loggedEvents.put(eventName, loggedEvent);
+            if (coalescer != null) coalescers.add(coalescer);
             count++; // one more event registered
         }
 
+        // Coalesced windows of a player are logged when the player quits or changes world
+        if (!coalescers.isEmpty()) {
+            final EventExecutor flushExecutor = (bukkitListener, bukkitEvent) -> {
+                final UUID uuid = ((PlayerEvent) bukkitEvent).getPlayer().getUniqueId();
+                for (final LogCoalescer coalescer : coalescers) coalescer.flush(uuid);
+            };
+            Bukkit.getPluginManager().registerEvent(PlayerQuitEvent.class, listener, EventPriority.MONITOR, flushExecutor, pl);
+            Bukkit.getPluginManager().registerEvent(PlayerChangedWorldEvent.class, listener, EventPriority.MONITOR, flushExecutor, pl);
+        }
+
         // Result
+        loadTime = System.nanoTime() - start;
         if (count == 0) sender.sendMessage(prefix + Utils.color("&e[!!] There is nothing to log. Add events in config.yml."));
-        else sender.sendMessage(prefix + Utils.color("&aLogging &e" + count + "&a event" + (count > 1 ? "s" : "") + "."));
+        else sender.sendMessage(prefix + Utils.color("&aLogging &e" + count + "&a event" + (count > 1 ? "s" : "") + " &7(loaded in &e" + TimeUnit.NANOSECONDS.toMillis(loadTime) + "&7 ms)&a."));
 
         // Running async loop for saving cache
-        final int saveDelay = config.getInt("save-delay");
+        final int saveDelay = settings.getSaveDelay();
         if (saveDelay != 0 && count != 0) {
             Bukkit.getScheduler().runTaskTimerAsynchronously(pl, pl.getLogManager()::saveAll, saveDelay * 20L, (saveDelay * 20L));
             sender.sendMessage(prefix + Utils.color("&aSaving logs async each &e" + saveDelay + "&a seconds."));
@@ -265,28 +316,29 @@ public final class LogConfig {
     }
 
     /**
-     * Get the set of commands that should be alerted when used
-     * @return set of commands that should be alerted
+     * Get the immutable snapshot of this config
+     * @return the settings of this config
      */
     @NotNull
-    public Set<String> getAlertCommands() {
-        return alertCommands;
+    public LogSettings getSettings() {
+        return settings;
     }
 
     /**
-     * If Citizens is enabled on this instance
-     * @return true if Citizens is running, otherwise false
+     * Time spent loading the events of this config
+     * @return the load time, in nanoseconds, 0 if the events are not loaded
      */
-    public boolean isCitizensEnabled() {
-        return isCitizensEnabled;
+    public long getLoadTime() {
+        return loadTime;
     }
 
     /**
-     * If we are running on the new api-version 1.13+ version
-     * @return true if MC>=1.13, otherwise false
+     * Get the logged events
+     * @return the logged events, by event name
      */
-    public boolean isBukkitNewApi() {
-        return bukkitNewApi;
+    @NotNull
+    public Map<String, LoggedEvent> getEvents() {
+        return Collections.unmodifiableMap(loggedEvents);
     }
 
     /**
@@ -306,11 +358,11 @@ public final class LogConfig {
     }
 
     /**
-     * Get the date format entered in the config
-     * @return the date format configured in this config
+     * Get the router of the logs into their files, using the logs format entered in the config
+     * @return the router of this config
      */
     @NotNull
-    public DateFormat getDateFormat() {
-        return dateFormat;
+    public LogRouter getRouter() {
+        return router;
     }
 }
@@ -0,0 +1,484 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import fr.andross.superlog.SuperLog;
+import fr.andross.superlog.utils.LoggedEvent;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.HumanEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockEvent;
+import org.bukkit.event.block.BlockMultiPlaceEvent;
+import org.bukkit.event.entity.EntityEvent;
+import org.bukkit.event.hanging.HangingEvent;
+import org.bukkit.event.inventory.InventoryEvent;
+import org.bukkit.event.player.PlayerEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.event.server.PluginEvent;
+import org.bukkit.event.vehicle.VehicleEvent;
+import org.bukkit.event.vehicle.VehicleMoveEvent;
+import org.bukkit.event.weather.WeatherEvent;
+import org.bukkit.event.world.ChunkEvent;
+import org.bukkit.event.world.WorldEvent;
+import org.bukkit.inventory.InventoryView;
+import org.bukkit.plugin.EventExecutor;
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Event executor of a logged event.
+ * All logged events share this executor: what changes between event families
+ * (subject, involved player, ignore conditions) is resolved from the plan
+ * computed once when the event is registered.
+ * @version 1.2
+ * @author Andross
+ */
+public final class LogExecutor implements EventExecutor {
+    private static final LogTemplate COUNTED = new LogTemplate("{COUNT} events only counted (server lagging)");
+    private static final long COUNTED_DELAY = TimeUnit.SECONDS.toMillis(60);
+    private final SuperLog pl;
+    private final LoggedEvent loggedEvent;
+    private final String eventName;
+    private final LogFamily family;
+    private final MethodHandle playerGetter;
+    private final int sampleRate;
+    private final long sampleSeed;
+    private final LogProfiler.EventProfile profile;
+    private final LongAdder counted = new LongAdder(); // events only counted by the load governor
+    private volatile long countedSince = 0;
+
+    private LogExecutor(@NotNull final SuperLog pl, @NotNull final Class<? extends Event> event, @NotNull final LoggedEvent loggedEvent, @NotNull final LogFamily family) {
+        this.pl = pl;
+        this.loggedEvent = loggedEvent;
+        this.eventName = event.getSimpleName();
+        this.family = family;
+        this.playerGetter = LogUtils.getPlayerGetter(event);
+        this.sampleRate = loggedEvent.getSampleRate();
+        this.sampleSeed = getSampleSeed(event.getName());
+        this.profile = pl.getLogManager().getProfiler().getProfile(event.getSimpleName());
+    }
+
+    /**
+     * Creating an event executor for an event
+     * @param pl the plugin instance
+     * @param event event type
+     * @param loggedEvent logged event configuration
+     * @return an event executor, null if not supported
+     */
+    @Nullable
+    public static LogExecutor of(@NotNull final SuperLog pl, @NotNull final Class<? extends Event> event, @NotNull final LoggedEvent loggedEvent) {
+        final LogFamily family = LogFamily.of(event);
+        return family == null ? null : new LogExecutor(pl, event, loggedEvent, family);
+    }
+
+    @Override
+    public void execute(@NotNull final Listener listener, @NotNull final Event event) {
+        if (!pl.getLogConfig().isEnabled()) return;
+        final long start = System.nanoTime();
+        log(event);
+        final long nanos = System.nanoTime() - start;
+        pl.getLogManager().getStats().addCapture(nanos);
+        profile.addTotal(nanos);
+    }
+
+    /**
+     * Logging an event
+     * @param event the event runned
+     */
+    private void log(@NotNull final Event event) {
+        // We ignore a BlockMultiPlaceEvent
+        if (event instanceof BlockMultiPlaceEvent) return;
+
+        final boolean debug = pl.getLogManager().isDebug();
+
+        // Degraded by the load governor?
+        final LogGovernor governor = pl.getLogManager().getGovernor();
+        final LogGovernor.Tier tier = governor.getTier(loggedEvent.getPriority());
+        switch (tier) {
+            case OFF:
+                governor.addDegraded(tier);
+                profile.count(LogProfiler.Outcome.DEGRADED);
+                if (debug) debug(event, "Server lagging: event not logged.");
+                return;
+            case COUNTS:
+                governor.addDegraded(tier);
+                profile.count(LogProfiler.Outcome.DEGRADED);
+                count(event);
+                if (debug) debug(event, "Server lagging: event only counted.");
+                return;
+            default:
+                if (countedSince != 0) logCounted(event.isAsynchronous());
+        }
+
+        // Getting the subject and the player involved
+        final Object subject = getSubject(event);
+        final HumanEntity p = getPlayer(event, subject);
+
+        // Is Citizens NPC?
+        if (family == LogFamily.PLAYER && pl.getLogConfig().getSettings().isCitizensEnabled() && p != null && p.hasMetadata("NPC")) {
+            profile.count(LogProfiler.Outcome.IGNORED);
+            return;
+        }
+
+        // Coalesced with the previous events?
+        LogCoalescer.Window window = null;
+        final LogCoalescer coalescer = loggedEvent.getCoalescer();
+        final long tick = pl.getLogManager().getStats().getTick();
+        if (coalescer != null && !event.isAsynchronous()) {
+            final Entity entity = subject instanceof Entity ? (Entity) subject : p;
+            final Location to = entity == null ? null : getTo(event, entity);
+            if (to != null) {
+                final Location from = event instanceof PlayerMoveEvent ? ((PlayerMoveEvent) event).getFrom()
+                        : event instanceof VehicleMoveEvent ? ((VehicleMoveEvent) event).getFrom() : to;
+                window = coalescer.offer(entity.getUniqueId(), from, to, tick, this);
+                if (!window.isComplete()) {
+                    // Captured now, as the event state: logged if the window is flushed before its next event
+                    window.setRecord(capture(event, subject, p, window, tick, tier, false));
+                    profile.count(LogProfiler.Outcome.COALESCED);
+                    if (debug) debug(event, "Event coalesced. Waiting for the next boundary.");
+                    return;
+                }
+            }
+        }
+
+        accept(event, subject, p, window, tick, tier, debug);
+    }
+
+    /**
+     * Logging the events still waiting in a coalesced window, with the record of its last event.
+     * Called on the main thread, when the window is flushed.
+     * @param record the last event of the window, captured when absorbed
+     */
+    void log(@NotNull final LogRecord record) {
+        if (!pl.getLogConfig().isEnabled()) return;
+        final LogGovernor governor = pl.getLogManager().getGovernor();
+        final LogGovernor.Tier tier = governor.getTier(loggedEvent.getPriority());
+        if (tier == LogGovernor.Tier.OFF || tier == LogGovernor.Tier.COUNTS) {
+            governor.addDegraded(tier);
+            profile.count(LogProfiler.Outcome.DEGRADED);
+            return;
+        }
+        pl.getLogManager().log(record, false);
+        profile.count(LogProfiler.Outcome.ACCEPTED);
+    }
+
+    /**
+     * Sampling, serializing and logging an event
+     * @param event the event
+     * @param subject the main object of the event
+     * @param p the player involved
+     * @param window the coalesced window ending with this event, null if not coalesced
+     * @param tick the current tick
+     * @param tier the load governor tier
+     * @param debug if debug messages are recorded
+     */
+    private void accept(@NotNull final Event event, @Nullable final Object subject, @Nullable final HumanEntity p, @Nullable final LogCoalescer.Window window,
+                        final long tick, @NotNull final LogGovernor.Tier tier, final boolean debug) {
+        final long start = System.nanoTime();
+        final LogRecord record = capture(event, subject, p, window, tick, tier, debug);
+        if (record == null) return;
+        final long serialized = System.nanoTime();
+        profile.getSerialization().add(serialized - start);
+
+        // Adding log
+        pl.getLogManager().log(record, event.isAsynchronous());
+        profile.getEnqueue().add(System.nanoTime() - serialized);
+        profile.count(LogProfiler.Outcome.ACCEPTED);
+        if (debug) debug(event, "Serialized in " + (serialized - start) + " ns.");
+    }
+
+    /**
+     * Sampling and serializing an event into a record
+     * @param event the event
+     * @param subject the main object of the event
+     * @param p the player involved
+     * @param window the coalesced window ending with this event, null if not coalesced
+     * @param tick the current tick
+     * @param tier the load governor tier
+     * @param debug if debug messages are recorded
+     * @return the captured event, null if it should not be logged
+     */
+    @Nullable
+    private LogRecord capture(@NotNull final Event event, @Nullable final Object subject, @Nullable final HumanEntity p, @Nullable final LogCoalescer.Window window,
+                              final long tick, @NotNull final LogGovernor.Tier tier, final boolean debug) {
+        final LogGovernor governor = pl.getLogManager().getGovernor();
+        final boolean absorbed = window != null && !window.isComplete();
+
+        // Sampled out?
+        final int rate = tier == LogGovernor.Tier.SAMPLED ? sampleRate * governor.getSampleRate() : sampleRate;
+        if (rate > 1 && !isSampled(subject, p, rate)) {
+            if (absorbed) return null;
+            if (tier == LogGovernor.Tier.SAMPLED) governor.addDegraded(tier);
+            profile.count(LogProfiler.Outcome.SAMPLED);
+            if (debug) debug(event, "Event sampled out. Ignoring it.");
+            return null;
+        }
+
+        // Starting serialization
+        final LogSerializer serializer = new LogSerializer(pl, loggedEvent, event);
+        if (rate != sampleRate) serializer.setSampleRate(rate);
+        // Ignored event?
+        if (serializer.isAnIgnoredEvent(getConditionValue(subject, p))) {
+            if (absorbed) return null;
+            profile.count(LogProfiler.Outcome.IGNORED);
+            if (debug) debug(event, "Event should not be logged. Ignoring it.");
+            return null;
+        }
+
+        // Serializing fields
+        if (window != null) serializer.serialize(window, tick);
+        if (serializer.serializeFields(event)) {
+            if (absorbed) return null;
+            profile.count(LogProfiler.Outcome.IGNORED);
+            if (debug) debug(event, "Fields should not be logged. Ignoring it.");
+            return null;
+        }
+
+        // Serializing the rest of the event
+        serialize(serializer, subject, p);
+        if (p != null) serializer.setPlayerName(p.getName());
+        serializer.setEventType(family.getEventType());
+        return serializer.capture();
+    }
+
+    /**
+     * Recording a debug message
+     * @param event the event
+     * @param message the debug message
+     */
+    private void debug(@NotNull final Event event, @NotNull final String message) {
+        pl.getLogManager().getProfiler().debug(event.getEventName(), message);
+    }
+
+    /**
+     * Counting an event not logged by the load governor.
+     * The amount of counted events is logged every minute.
+     * @param event the event
+     */
+    private void count(@NotNull final Event event) {
+        counted.increment();
+        final long now = System.currentTimeMillis();
+        final long since = countedSince;
+        if (since == 0) {
+            countedSince = now;
+            pl.getLogManager().getGovernor().addCounting(this);
+        } else if (now - since >= COUNTED_DELAY) logCounted(event.isAsynchronous());
+    }
+
+    /**
+     * Logging the amount of counted events if due, from the load governor tick:
+     * the summary does not wait for the next event of this type.
+     * @param now the current time, in milliseconds
+     * @param force true to log the summary even if not due
+     * @return true if there is no pending summary anymore, otherwise false
+     */
+    boolean flushCounted(final long now, final boolean force) {
+        final long since = countedSince;
+        if (since == 0) return true;
+        if (!force && now - since < COUNTED_DELAY) return false;
+        logCounted(false);
+        return true;
+    }
+
+    /**
+     * Logging the amount of events counted by the load governor
+     * @param async if logged from an asynchronous thread
+     */
+    private void logCounted(final boolean async) {
+        countedSince = 0;
+        final long count = counted.sumThenReset();
+        if (count == 0) return;
+        final String[] values = new String[COUNTED.size()];
+        values[COUNTED.getSlot("COUNT")] = Long.toString(count);
+        pl.getLogManager().log(new LogRecord(COUNTED, values, null, eventName, null, family.getEventType(),
+                false, System.currentTimeMillis(), loggedEvent.getPriority(), 1, 1), async);
+    }
+
+    /**
+     * Get the location of the player or entity after the event
+     * @param event the event
+     * @param entity the player or entity
+     * @return the location, null if unknown
+     */
+    @Nullable
+    private static Location getTo(@NotNull final Event event, @NotNull final Entity entity) {
+        if (event instanceof PlayerMoveEvent) return ((PlayerMoveEvent) event).getTo();
+        if (event instanceof VehicleMoveEvent) return ((VehicleMoveEvent) event).getTo();
+        return entity.getLocation();
+    }
+
+    /**
+     * Deterministic sampling: the same player (or subject) is either logged or not during a whole second
+     * @param subject the main object of the event
+     * @param p the player involved
+     * @param rate the sample rate
+     * @return true if the event should be logged, otherwise false
+     */
+    private boolean isSampled(@Nullable final Object subject, @Nullable final HumanEntity p, final int rate) {
+        final int key;
+        if (p != null) key = p.getName().hashCode();
+        else if (subject instanceof Block) {
+            final Block b = (Block) subject;
+            key = (b.getX() * 31 + b.getY()) * 31 + b.getZ();
+        } else if (subject instanceof Entity) key = ((Entity) subject).getEntityId();
+        else if (subject instanceof Chunk) key = ((Chunk) subject).getX() * 31 + ((Chunk) subject).getZ();
+        else key = 0;
+        return isSampled(sampleSeed, key, System.currentTimeMillis() / 1000L, rate);
+    }
+
+    /**
+     * Deterministic sampling decision
+     * @param seed the seed of the event
+     * @param key the key of the player (or subject)
+     * @param second the current second
+     * @param rate the sample rate
+     * @return true if the event should be logged, otherwise false
+     */
+    static boolean isSampled(final long seed, final int key, final long second, final int rate) {
+        // SplitMix64 finalizer
+        long h = seed ^ ((long) key << 32 | (second & 0xFFFFFFFFL));
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        h ^= h >>> 31;
+        return Math.floorMod(h, (long) rate) == 0;
+    }
+
+    /**
+     * Get the sampling seed of an event
+     * @param eventName the event name
+     * @return the seed
+     */
+    static long getSampleSeed(@NotNull final String eventName) {
+        return eventName.hashCode() * 0x9E3779B97F4A7C15L;
+    }
+
+    /**
+     * Get the main object of the event
+     * @param event the event
+     * @return the main object, null if none
+     */
+    @Nullable
+    private Object getSubject(@NotNull final Event event) {
+        switch (family) {
+            case BLOCK: return ((BlockEvent) event).getBlock();
+            case ENTITY: return ((EntityEvent) event).getEntity();
+            case HANGING: return ((HangingEvent) event).getEntity();
+            case INVENTORY: return ((InventoryEvent) event).getView();
+            case PLUGIN: return ((PluginEvent) event).getPlugin();
+            case VEHICLE: return ((VehicleEvent) event).getVehicle();
+            case WEATHER: return ((WeatherEvent) event).getWorld();
+            case WORLD: return ((WorldEvent) event).getWorld();
+            case CHUNK: return ((ChunkEvent) event).getChunk();
+            default: return null;
+        }
+    }
+
+    /**
+     * Get the player involved into the event
+     * @param event the event
+     * @param subject the main object of the event
+     * @return the player involved, null if none
+     */
+    @Nullable
+    private HumanEntity getPlayer(@NotNull final Event event, @Nullable final Object subject) {
+        switch (family) {
+            case PLAYER: return ((PlayerEvent) event).getPlayer();
+            case ENTITY: return subject instanceof Player ? (Player) subject : null;
+            case INVENTORY: return ((InventoryView) subject).getPlayer();
+            case BLOCK:
+            case HANGING:
+                try {
+                    return (Player) playerGetter.invokeExact(event);
+                } catch (final Throwable t) {
+                    return null;
+                }
+            default: return null;
+        }
+    }
+
+    /**
+     * Get the value checked by the IGNORED/LOGGED conditions of the event
+     * @param subject the main object of the event
+     * @param p the player involved
+     * @return the value, null if this family has no condition
+     */
+    @Nullable
+    private String getConditionValue(@Nullable final Object subject, @Nullable final HumanEntity p) {
+        switch (family) {
+            case PLAYER: return p == null ? null : p.getName();
+            case BLOCK: return ((Block) subject).getType().name();
+            case ENTITY: return ((Entity) subject).getType().name();
+            case INVENTORY: return ((InventoryView) subject).getTopInventory().getType().name();
+            case PLUGIN: return ((Plugin) subject).getName();
+            default: return null;
+        }
+    }
+
+    /**
+     * Serializing the main object of the event, and the player involved
+     * @param serializer the serializer
+     * @param subject the main object of the event
+     * @param p the player involved
+     */
+    private void serialize(@NotNull final LogSerializer serializer, @Nullable final Object subject, @Nullable final HumanEntity p) {
+        switch (family) {
+            case PLAYER:
+                if (p != null) serializer.serialize(p, null);
+                break;
+            case BLOCK:
+                serializer.serialize((Block) subject, null);
+                break;
+            case ENTITY:
+            case VEHICLE:
+                serializer.serialize((Entity) subject, null);
+                break;
+            case HANGING:
+                if (p != null) serializer.serialize(p, "PLAYER");
+                serializer.serialize((Entity) subject, null);
+                break;
+            case INVENTORY:
+                if (p != null) {
+                    serializer.serialize((InventoryView) subject, p.getLocation());
+                    serializer.serialize(p, "PLAYER");
+                }
+                break;
+            case PLUGIN:
+                serializer.serialize((Plugin) subject);
+                break;
+            case WEATHER:
+            case WORLD:
+                serializer.serialize((World) subject);
+                break;
+            case CHUNK:
+                serializer.serialize((Chunk) subject);
+                break;
+            default: break;
+        }
+    }
+}
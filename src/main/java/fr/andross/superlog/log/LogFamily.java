@@ -0,0 +1,91 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.block.BlockEvent;
+import org.bukkit.event.entity.EntityEvent;
+import org.bukkit.event.hanging.HangingEvent;
+import org.bukkit.event.inventory.InventoryEvent;
+import org.bukkit.event.player.PlayerEvent;
+import org.bukkit.event.server.PluginEvent;
+import org.bukkit.event.server.ServerEvent;
+import org.bukkit.event.vehicle.VehicleEvent;
+import org.bukkit.event.weather.WeatherEvent;
+import org.bukkit.event.world.ChunkEvent;
+import org.bukkit.event.world.WorldEvent;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Families of loggable events, by their Bukkit superclass
+ * @version 1.2
+ * @author Andross
+ */
+public enum LogFamily {
+    PLAYER(PlayerEvent.class, "PlayerEvents"),
+    BLOCK(BlockEvent.class, "BlockEvents"),
+    ENTITY(EntityEvent.class, "EntityEvents"),
+    HANGING(HangingEvent.class, "HangingEvents"),
+    INVENTORY(InventoryEvent.class, "InventoryEvents"),
+    SERVER(ServerEvent.class, "ServerEvents"),
+    PLUGIN(PluginEvent.class, "PluginEvents"),
+    VEHICLE(VehicleEvent.class, "VehicleEvents"),
+    WEATHER(WeatherEvent.class, "WeatherEvents"),
+    WORLD(WorldEvent.class, "WorldEvents"),
+    CHUNK(ChunkEvent.class, "ChunkEvents");
+
+    private final Class<? extends Event> type;
+    private final String eventType;
+
+    LogFamily(@NotNull final Class<? extends Event> type, @NotNull final String eventType) {
+        this.type = type;
+        this.eventType = eventType;
+    }
+
+    /**
+     * Get the family of an event class, from its closest known superclass
+     * @param event the event class
+     * @return the family, null if the event is not loggable
+     */
+    @Nullable
+    public static LogFamily of(@NotNull final Class<? extends Event> event) {
+        for (Class<?> c = event.getSuperclass(); c != null; c = c.getSuperclass())
+            for (final LogFamily family : values())
+                if (family.type == c) return family;
+        return null;
+    }
+
+    /**
+     * Get the Bukkit superclass of this family
+     * @return the superclass
+     */
+    @NotNull
+    public Class<? extends Event> getType() {
+        return type;
+    }
+
+    /**
+     * Get the event type of this family, used in log files names
+     * @return the event type
+     */
+    @NotNull
+    public String getEventType() {
+        return eventType;
+    }
+}
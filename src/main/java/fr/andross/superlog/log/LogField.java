@@ -0,0 +1,283 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.advancement.Advancement;
+import org.bukkit.block.Block;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.AnimalTamer;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Item;
+import org.bukkit.event.Event;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.MerchantRecipe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A field of an event to serialize, compiled once when the config is loaded:
+ * how its value is read, and how it is rendered.
+ * The value is read with the field itself (primitives without boxing): all fields are read from the same
+ * call site of the serializer, where a reflective read stays cheaper than bound lambdas or method handles.
+ * @version 1.2
+ * @author Andross
+ */
+public final class LogField {
+    /**
+     * How a field value is rendered.
+     * Object kinds are declared in the order they are matched against a value type.
+     */
+    public enum Kind {
+        // Primitive fields, read without boxing
+        INT, LONG, BOOLEAN,
+        // Object fields
+        STRING, NUMBER, ADVANCEMENT, ANIMAL_TAMER, ITEM_STACK, ITEM, MATERIAL, WORLD, BLOCK, LOCATION,
+        ENTITY, INVENTORY, COMMAND_SENDER, LIST, MAP, MERCHANT_RECIPE, ENUM, UNSUPPORTED
+    }
+
+    private static final ClassValue<Kind> kinds = new ClassValue<Kind>() {
+        @Override
+        protected Kind computeValue(@NotNull final Class<?> c) {
+            if (String.class.isAssignableFrom(c)) return Kind.STRING;
+            if (Integer.class.isAssignableFrom(c) || Boolean.class.isAssignableFrom(c) || Long.class.isAssignableFrom(c)) return Kind.NUMBER;
+            if (Advancement.class.isAssignableFrom(c)) return Kind.ADVANCEMENT;
+            if (AnimalTamer.class.isAssignableFrom(c)) return Kind.ANIMAL_TAMER;
+            if (ItemStack.class.isAssignableFrom(c)) return Kind.ITEM_STACK;
+            if (Item.class.isAssignableFrom(c)) return Kind.ITEM;
+            if (Material.class.isAssignableFrom(c)) return Kind.MATERIAL;
+            if (World.class.isAssignableFrom(c)) return Kind.WORLD;
+            if (Block.class.isAssignableFrom(c)) return Kind.BLOCK;
+            if (Location.class.isAssignableFrom(c)) return Kind.LOCATION;
+            if (Entity.class.isAssignableFrom(c)) return Kind.ENTITY;
+            if (Inventory.class.isAssignableFrom(c)) return Kind.INVENTORY;
+            if (CommandSender.class.isAssignableFrom(c)) return Kind.COMMAND_SENDER;
+            if (List.class.isAssignableFrom(c)) return Kind.LIST;
+            if (Map.class.isAssignableFrom(c)) return Kind.MAP;
+            if (MerchantRecipe.class.isAssignableFrom(c)) return Kind.MERCHANT_RECIPE;
+            if (Enum.class.isAssignableFrom(c)) return Kind.ENUM;
+            return Kind.UNSUPPORTED;
+        }
+    };
+
+    private final String name;
+    private final LogCondition condition;
+    private final Field field;
+    private final Kind kind; // null if it depends on the value type
+    private final int slot;
+    private final int slotName;
+    private final int slotAmount;
+    private final int slotType;
+    private final int slotLocWorld;
+    private final int slotLocX;
+    private final int slotLocY;
+    private final int slotLocZ;
+
+    /**
+     * Compiling a field of an event
+     * @param field the field, already accessible
+     * @param template the message template of the event
+     * @param condition the IGNORED/LOGGED conditions of this field, null if none
+     */
+    public LogField(@NotNull final Field field, @NotNull final LogTemplate template, @Nullable final LogCondition condition) {
+        name = field.getName().toUpperCase();
+        this.condition = condition;
+        this.field = field;
+
+        // The kind is known from now if the field type can not be subclassed
+        final Class<?> type = field.getType();
+        if (type == int.class) kind = Kind.INT;
+        else if (type == long.class) kind = Kind.LONG;
+        else if (type == boolean.class) kind = Kind.BOOLEAN;
+        else if (type.isPrimitive()) kind = Kind.UNSUPPORTED; // other primitives were never rendered
+        else kind = type.isEnum() || Modifier.isFinal(type.getModifiers()) ? kinds.get(type) : null;
+
+        // Slots of the message used by this field
+        slot = template.getSlot(name);
+        slotName = template.getSlot(name + ".NAME");
+        slotAmount = template.getSlot(name + ".AMOUNT");
+        slotType = template.getSlot(name + ".TYPE");
+        slotLocWorld = template.getSlot(name + ".LOCWORLD");
+        slotLocX = template.getSlot(name + ".LOCX");
+        slotLocY = template.getSlot(name + ".LOCY");
+        slotLocZ = template.getSlot(name + ".LOCZ");
+    }
+
+    /**
+     * Get how this field is rendered
+     * @param value the value of the field, for object fields
+     * @return the kind of this field
+     */
+    @NotNull
+    public Kind getKind(@Nullable final Object value) {
+        if (kind != null) return kind;
+        return value == null ? Kind.UNSUPPORTED : kinds.get(value.getClass());
+    }
+
+    /**
+     * Get the kind of this field, if it does not depend on the value
+     * @return the kind of this field, null if it depends on the value type
+     */
+    @Nullable
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Get the value of an object field
+     * @param e the event
+     * @return the value
+     */
+    @Nullable
+    public Object get(@NotNull final Event e) {
+        try {
+            return field.get(e);
+        } catch (final IllegalAccessException ex) {
+            throw new IllegalStateException(ex); // accessible, checked on loading
+        }
+    }
+
+    /**
+     * Get the value of an int field
+     * @param e the event
+     * @return the value
+     */
+    public int getInt(@NotNull final Event e) {
+        try {
+            return field.getInt(e);
+        } catch (final IllegalAccessException ex) {
+            throw new IllegalStateException(ex); // accessible, checked on loading
+        }
+    }
+
+    /**
+     * Get the value of a long field
+     * @param e the event
+     * @return the value
+     */
+    public long getLong(@NotNull final Event e) {
+        try {
+            return field.getLong(e);
+        } catch (final IllegalAccessException ex) {
+            throw new IllegalStateException(ex); // accessible, checked on loading
+        }
+    }
+
+    /**
+     * Get the value of a boolean field
+     * @param e the event
+     * @return the value
+     */
+    public boolean getBoolean(@NotNull final Event e) {
+        try {
+            return field.getBoolean(e);
+        } catch (final IllegalAccessException ex) {
+            throw new IllegalStateException(ex); // accessible, checked on loading
+        }
+    }
+
+    /**
+     * Get the field name
+     * @return the field name, uppercased
+     */
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the IGNORED/LOGGED conditions of this field
+     * @return the conditions of this field, null if none
+     */
+    @Nullable
+    public LogCondition getCondition() {
+        return condition;
+    }
+
+    /**
+     * Slot of {FIELD} in the message
+     * @return the slot, -1 if not in the message
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    /**
+     * Slot of {FIELD.NAME} in the message
+     * @return the slot, -1 if not in the message
+     */
+    public int getSlotName() {
+        return slotName;
+    }
+
+    /**
+     * Slot of {FIELD.AMOUNT} in the message
+     * @return the slot, -1 if not in the message
+     */
+    public int getSlotAmount() {
+        return slotAmount;
+    }
+
+    /**
+     * Slot of {FIELD.TYPE} in the message
+     * @return the slot, -1 if not in the message
+     */
+    public int getSlotType() {
+        return slotType;
+    }
+
+    /**
+     * Slot of {FIELD.LOCWORLD} in the message
+     * @return the slot, -1 if not in the message
+     */
+    public int getSlotLocWorld() {
+        return slotLocWorld;
+    }
+
+    /**
+     * Slot of {FIELD.LOCX} in the message
+     * @return the slot, -1 if not in the message
+     */
+    public int getSlotLocX() {
+        return slotLocX;
+    }
+
+    /**
+     * Slot of {FIELD.LOCY} in the message
+     * @return the slot, -1 if not in the message
+     */
+    public int getSlotLocY() {
+        return slotLocY;
+    }
+
+    /**
+     * Slot of {FIELD.LOCZ} in the message
+     * @return the slot, -1 if not in the message
+     */
+    public int getSlotLocZ() {
+        return slotLocZ;
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Load governor: when SuperLog takes too much of the server tick, the events are degraded
+ * (sampled, only counted, or not logged) depending on their priority.
+ * The load is the share of the tick (50 ms) spent capturing events, averaged over the last second:
+ * the server TPS is not used, as a lag caused by another plugin would only hide more logs.
+ * The load level is raised as soon as the load goes over a threshold,
+ * and lowered once the load stayed under the threshold (minus an hysteresis) for a while.
+ * @version 1.2
+ * @author Andross
+ */
+public final class LogGovernor {
+    private static final int MAX_TRANSITIONS = 10;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private static final double TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private final Logger logger;
+    private final boolean enabled;
+    private final double[] levels; // load (percent of the tick) over which each level is reached
+    private final double hysteresis;
+    private final int recoverAfter; // seconds
+    private final int sampleRate;
+    private final Tier[][] tiers; // priority -> level -> tier
+    private final LongAdder[] degraded = new LongAdder[Tier.values().length];
+    private final LinkedList<String> transitions = new LinkedList<>();
+    private final Set<LogExecutor> counting = ConcurrentHashMap.newKeySet(); // executors with a pending summary
+    private volatile int level = 0;
+    private volatile double tps = 20;
+    private volatile double load = 0;
+    // Main thread only
+    private long secondStart = System.nanoTime();
+    private int ticks = 0;
+    private int recovering = 0;
+
+    /**
+     * How an event is logged
+     */
+    public enum Tier {
+        /** Fully logged **/
+        FULL,
+        /** Sampled with the governor sample rate **/
+        SAMPLED,
+        /** Only counted, a summary is logged **/
+        COUNTS,
+        /** Not logged **/
+        OFF
+    }
+
+    /**
+     * Creating a load governor
+     * @param logger the plugin logger
+     * @param section the governor config section, null for the default config
+     * @param messages where to send the config errors
+     */
+    public LogGovernor(@NotNull final Logger logger, @Nullable final ConfigurationSection section, @NotNull final List<String> messages) {
+        this.logger = logger;
+        for (int i = 0; i < degraded.length; i++) degraded[i] = new LongAdder();
+        enabled = section != null && section.getBoolean("enabled", false);
+
+        // Levels
+        double[] configLevels = { 5, 10, 20 };
+        if (section != null && section.isList("levels")) {
+            final List<Double> list = section.getDoubleList("levels");
+            if (list.isEmpty()) messages.add("Invalid 'governor.levels'. Using default.");
+            else configLevels = list.stream().sorted(Comparator.naturalOrder()).mapToDouble(Double::doubleValue).toArray();
+        }
+        levels = configLevels;
+        hysteresis = section == null ? 1 : Math.max(0, section.getDouble("hysteresis", 1));
+        recoverAfter = section == null ? 10 : Math.max(1, section.getInt("recover-after", 10));
+        sampleRate = section == null ? 10 : Math.max(1, section.getInt("sample-rate", 10));
+
+        // Tiers, per priority
+        tiers = new Tier[LogPriority.values().length][];
+        for (final LogPriority priority : LogPriority.values()) {
+            final Tier[] priorityTiers = new Tier[levels.length + 1];
+            priorityTiers[0] = Tier.FULL;
+            final List<String> names = section == null ? null : section.getStringList("tiers." + priority.name().toLowerCase());
+            for (int l = 1; l < priorityTiers.length; l++) {
+                Tier tier = getDefaultTier(priority, l);
+                if (names != null && !names.isEmpty()) {
+                    final String name = names.get(Math.min(l - 1, names.size() - 1));
+                    try {
+                        tier = Tier.valueOf(name.trim().toUpperCase());
+                    } catch (final IllegalArgumentException e) {
+                        messages.add("Invalid tier '" + name + "' in 'governor.tiers." + priority.name().toLowerCase() + "'. Using default.");
+                    }
+                }
+                priorityTiers[l] = tier;
+            }
+            tiers[priority.ordinal()] = priorityTiers;
+        }
+    }
+
+    @NotNull
+    private static Tier getDefaultTier(@NotNull final LogPriority priority, final int level) {
+        switch (priority) {
+            case LOW: return level == 1 ? Tier.SAMPLED : level == 2 ? Tier.COUNTS : Tier.OFF;
+            case NORMAL: return level == 1 ? Tier.FULL : level == 2 ? Tier.SAMPLED : Tier.COUNTS;
+            default: return level >= 3 ? Tier.SAMPLED : Tier.FULL;
+        }
+    }
+
+    /**
+     * Measuring the load, updating the load level, and logging the pending summaries of counted events.
+     * Should be called every tick, on the main thread.
+     * @param captureNanos time spent capturing events per tick, averaged over the last second
+     */
+    public void tick(final long captureNanos) {
+        if (++ticks < 20) return;
+        final long now = System.nanoTime();
+        final double seconds = (now - secondStart) / (double) TimeUnit.SECONDS.toNanos(1);
+        secondStart = now;
+        ticks = 0;
+        tps = Math.min(20, 20 / seconds);
+        final double currentLoad = 100 * captureNanos / TICK_NANOS;
+        load = currentLoad;
+
+        // Summaries of counted events
+        if (!counting.isEmpty()) {
+            final long millis = System.currentTimeMillis();
+            counting.removeIf(executor -> executor.flushCounted(millis, level == 0));
+        }
+        if (!enabled) return;
+
+        // Load level for this load
+        int target = 0;
+        while (target < levels.length && currentLoad >= levels[target]) target++;
+
+        if (target > level) { // Too much time spent: degrading now
+            recovering = 0;
+            setLevel(target, currentLoad);
+        } else if (target < level) {
+            // Recovering: the load should stay under the threshold of the current level, minus the hysteresis
+            if (currentLoad <= levels[level - 1] - hysteresis) {
+                if (++recovering >= recoverAfter) {
+                    recovering = 0;
+                    setLevel(level - 1, currentLoad);
+                }
+            } else recovering = 0;
+        } else recovering = 0;
+    }
+
+    private void setLevel(final int newLevel, final double currentLoad) {
+        final String transition = String.format("Load level %d -> %d (%.1f%% of the tick)", level, newLevel, currentLoad);
+        level = newLevel;
+        logger.info("[Governor] " + transition);
+        synchronized (transitions) {
+            transitions.addFirst(LocalTime.now().format(TIME_FORMAT) + " " + transition);
+            if (transitions.size() > MAX_TRANSITIONS) transitions.removeLast();
+        }
+    }
+
+    /**
+     * Get how an event of this priority should be logged, at the current load level
+     * @param priority the event priority
+     * @return the tier
+     */
+    @NotNull
+    public Tier getTier(@NotNull final LogPriority priority) {
+        return tiers[priority.ordinal()][level];
+    }
+
+    /**
+     * Counting an event degraded by the governor
+     * @param tier the tier applied
+     */
+    public void addDegraded(@NotNull final Tier tier) {
+        degraded[tier.ordinal()].increment();
+    }
+
+    /**
+     * Get the amount of events degraded by the governor
+     * @param tier the tier
+     * @return the amount of events
+     */
+    public long getDegraded(@NotNull final Tier tier) {
+        return degraded[tier.ordinal()].sum();
+    }
+
+    /**
+     * Registering an executor which started counting events.
+     * Its summary is logged by the governor tick once due, or as soon as the load level is back to 0.
+     * @param executor the executor
+     */
+    void addCounting(@NotNull final LogExecutor executor) {
+        counting.add(executor);
+    }
+
+    /**
+     * Get the sample rate of the sampled tier
+     * @return the sample rate
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Get the current load level
+     * @return the load level, 0 if the server is not lagging
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Get the TPS measured over the last second
+     * @return the TPS
+     */
+    public double getTps() {
+        return tps;
+    }
+
+    /**
+     * Get the share of the tick spent capturing events, over the last second
+     * @return the load, in percent of a 50 ms tick
+     */
+    public double getLoad() {
+        return load;
+    }
+
+    /**
+     * If the governor is enabled
+     * @return true if enabled, otherwise false
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get the tiers of a priority, for each load level
+     * @param priority the priority
+     * @return the tiers, from level 0
+     */
+    @NotNull
+    public List<Tier> getTiers(@NotNull final LogPriority priority) {
+        return Arrays.asList(tiers[priority.ordinal()]);
+    }
+
+    /**
+     * Get the last load level transitions
+     * @return the last transitions, most recent first
+     */
+    @NotNull
+    public List<String> getTransitions() {
+        synchronized (transitions) {
+            return new ArrayList<>(transitions);
+        }
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Sidecar index of a log file, written next to it ('file.log.idx').
+ * Each batch of lines appended to the log file adds, per event name, the time range,
+ * the offsets of its lines and their times (from the start of the range), then the byte range covered by the batch:
+ * <pre>
+ * BlockBreakEvent 1600000000000 1600000004000 0,57,61 0,2000,4000
+ * PlayerJoinEvent 1600000001000 1600000001000 118 0
+ * # 0 236
+ * </pre>
+ * The log lines can then be read directly, without scanning unrelated data.
+ * Batches are appended in time order, so a time range is found by binary search over the batches.
+ * Ranges of the log file not covered by the index (written before the index, or while it was unavailable) have to be scanned.
+ * @version 1.2
+ * @author Andross
+ */
+public final class LogIndex {
+    public static final String EXTENSION = ".idx";
+    private static final int SEPARATOR = System.lineSeparator().length();
+    private final List<Batch> batches = new ArrayList<>();
+    private long[] maxTimes; // highest time up to each batch
+    private long[] minTimes; // lowest time from each batch
+
+    private LogIndex() { }
+
+    /**
+     * Get the index file of a log file
+     * @param log the log file
+     * @return the index file
+     */
+    @NotNull
+    public static File getFile(@NotNull final File log) {
+        return new File(log.getParentFile(), log.getName() + EXTENSION);
+    }
+
+    /**
+     * Appending a batch of saved logs into the index
+     * @param index the index writer
+     * @param start offset of the first log in the log file
+     * @param sink the saved logs
+     * @return offset of the end of the batch in the log file
+     * @throws IOException if the index can not be written
+     */
+    static long append(@NotNull final Writer index, final long start, @NotNull final LogSink sink) throws IOException {
+        final List<String> lines = sink.getLines();
+        final List<String> events = sink.getEvents();
+        final Map<String, Entry> batch = new LinkedHashMap<>();
+        long offset = start;
+        for (int i = 0; i < lines.size(); i++) {
+            batch.computeIfAbsent(events.get(i), Entry::new).add(offset, sink.getTime(i));
+            offset += utf8Length(lines.get(i)) + SEPARATOR;
+        }
+
+        final StringBuilder sb = new StringBuilder();
+        for (final Entry entry : batch.values()) {
+            sb.append(entry.event).append(' ').append(entry.minTime).append(' ').append(entry.maxTime).append(' ');
+            long previous = 0;
+            for (int i = 0; i < entry.size; i++) {
+                if (i > 0) sb.append(',');
+                sb.append(entry.offsets[i] - previous); // delta encoded
+                previous = entry.offsets[i];
+            }
+            sb.append(' ');
+            for (int i = 0; i < entry.size; i++) {
+                if (i > 0) sb.append(',');
+                sb.append(entry.times[i] - entry.minTime);
+            }
+            sb.append('\n');
+        }
+        sb.append("# ").append(start).append(' ').append(offset).append('\n');
+        index.append(sb);
+        return offset;
+    }
+
+    /**
+     * Loading the index of a log file
+     * @param log the log file
+     * @return the index, null if the log file has no index
+     */
+    @Nullable
+    public static LogIndex load(@NotNull final File log) {
+        final File file = getFile(log);
+        if (!file.isFile()) return null;
+        final LogIndex index = new LogIndex();
+        final List<Entry> entries = new ArrayList<>();
+        try (final BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            for (String line; (line = br.readLine()) != null;) {
+                final String[] parts = line.split(" ");
+                if (parts[0].equals("#") && parts.length == 3) { // End of a batch
+                    index.batches.add(new Batch(Long.parseLong(parts[1]), Long.parseLong(parts[2]), new ArrayList<>(entries)));
+                    entries.clear();
+                    continue;
+                }
+                if (parts.length != 4 && parts.length != 5) break;
+                final long minTime = Long.parseLong(parts[1]);
+                final long maxTime = Long.parseLong(parts[2]);
+                final String[] offsets = parts[3].split(",");
+                final String[] times = parts.length == 5 ? parts[4].split(",") : null;
+                if (times != null && times.length != offsets.length) break;
+                final Entry entry = new Entry(parts[0]);
+                long offset = 0;
+                for (int i = 0; i < offsets.length; i++) {
+                    offset += Long.parseLong(offsets[i]);
+                    entry.add(offset, times == null ? minTime : minTime + Long.parseLong(times[i]));
+                }
+                entry.minTime = minTime;
+                entry.maxTime = maxTime;
+                entry.exact = times != null;
+                entries.add(entry);
+            }
+        } catch (final IOException | NumberFormatException e) {
+            // Keeping the complete batches read
+        }
+
+        // Time bounds, for the binary searches
+        final int size = index.batches.size();
+        index.maxTimes = new long[size];
+        index.minTimes = new long[size];
+        for (int i = 0; i < size; i++) index.maxTimes[i] = Math.max(i == 0 ? Long.MIN_VALUE : index.maxTimes[i - 1], index.batches.get(i).maxTime);
+        for (int i = size - 1; i >= 0; i--) index.minTimes[i] = Math.min(i == size - 1 ? Long.MAX_VALUE : index.minTimes[i + 1], index.batches.get(i).minTime);
+        return index;
+    }
+
+    /**
+     * Get the offsets of the logs of the matching events
+     * @param event the event names filter
+     * @return the offsets, sorted
+     */
+    @NotNull
+    public long[] getOffsets(@NotNull final Predicate<String> event) {
+        return getOffsets(event, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Get the offsets of the logs of the matching events, during a time range.
+     * The batches of the time range are found by binary search.
+     * @param event the event names filter
+     * @param from start of the time range, in milliseconds (included)
+     * @param to end of the time range, in milliseconds (included)
+     * @return the offsets, sorted
+     */
+    @NotNull
+    public long[] getOffsets(@NotNull final Predicate<String> event, final long from, final long to) {
+        final int first = lowerBound(maxTimes, from); // batches before have only older logs
+        final int last = to == Long.MAX_VALUE ? minTimes.length : lowerBound(minTimes, to + 1); // batches from this one have only newer logs
+        long[] offsets = new long[64];
+        int size = 0;
+        for (int b = first; b < last; b++) {
+            for (final Entry entry : batches.get(b).entries) {
+                if (entry.maxTime < from || entry.minTime > to || !event.test(entry.event)) continue;
+                if (size + entry.size > offsets.length) offsets = Arrays.copyOf(offsets, Math.max(offsets.length * 2, size + entry.size));
+                for (int i = 0; i < entry.size; i++) {
+                    if (entry.exact && (entry.times[i] < from || entry.times[i] > to)) continue;
+                    offsets[size++] = entry.offsets[i];
+                }
+            }
+        }
+        offsets = Arrays.copyOf(offsets, size);
+        Arrays.sort(offsets);
+        return offsets;
+    }
+
+    /**
+     * First index of a sorted array holding a value greater or equal
+     * @param values the sorted values
+     * @param value the value
+     * @return the index, the array length if none
+     */
+    private static int lowerBound(@NotNull final long[] values, final long value) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (values[mid] < value) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * Get the ranges of the log file not covered by this index
+     * @param length the length of the log file
+     * @return the uncovered ranges, as {start, end}
+     */
+    @NotNull
+    public List<long[]> getUncovered(final long length) {
+        final List<Batch> ranges = new ArrayList<>(batches);
+        ranges.sort(Comparator.comparingLong(r -> r.start));
+        final List<long[]> uncovered = new ArrayList<>();
+        long position = 0;
+        for (final Batch range : ranges) {
+            if (range.start > position) uncovered.add(new long[] { position, range.start });
+            position = Math.max(position, range.end);
+        }
+        if (position < length) uncovered.add(new long[] { position, length });
+        return uncovered;
+    }
+
+    /**
+     * Reading the lines starting at these offsets
+     * @param log the log file
+     * @param offsets the offsets, sorted
+     * @param consumer the lines consumer
+     * @throws IOException if the log file can not be read
+     */
+    public static void readLines(@NotNull final File log, @NotNull final long[] offsets, @NotNull final LineConsumer consumer) throws IOException {
+        try (final FileChannel channel = FileChannel.open(log.toPath(), StandardOpenOption.READ)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(65536);
+            long bufferStart = -1;
+            for (final long offset : offsets) {
+                // The gap can be larger than the buffer (or than 2 GiB): the line is then read from its offset
+                final long gap = offset - bufferStart;
+                int start = 0;
+                int end = -1;
+                if (bufferStart >= 0 && gap >= 0 && gap < buffer.limit()) {
+                    start = (int) gap;
+                    end = indexOf(buffer, start);
+                }
+                if (end < 0) { // Line not in the buffer: reading from its offset
+                    buffer.clear();
+                    channel.read(buffer, offset);
+                    buffer.flip();
+                    bufferStart = offset;
+                    start = 0;
+                    end = indexOf(buffer, 0);
+                    if (end < 0) end = buffer.limit(); // Last line, or longer than the buffer
+                }
+                final int length = end > start && buffer.get(end - 1) == '\r' ? end - 1 - start : end - start;
+                if (length > 0) consumer.accept(new String(buffer.array(), start, length, StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    /**
+     * Reading the lines of a range of the log file
+     * @param log the log file
+     * @param start start of the range
+     * @param end end of the range
+     * @param consumer the lines consumer
+     * @throws IOException if the log file can not be read
+     */
+    public static void scan(@NotNull final File log, final long start, final long end, @NotNull final LineConsumer consumer) throws IOException {
+        try (final FileInputStream in = new FileInputStream(log)) {
+            in.getChannel().position(start);
+            final BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            long position = start;
+            for (String line; position < end && (line = br.readLine()) != null;) {
+                position += utf8Length(line) + SEPARATOR;
+                consumer.accept(line);
+            }
+        }
+    }
+
+    private static int indexOf(@NotNull final ByteBuffer buffer, final int from) {
+        for (int i = from; i < buffer.limit(); i++) if (buffer.get(i) == '\n') return i;
+        return -1;
+    }
+
+    /**
+     * Length of a string encoded in UTF-8
+     * @param s the string
+     * @return the length, in bytes
+     */
+    static int utf8Length(@NotNull final String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c < 0x80) length++;
+            else if (c < 0x800) length += 2;
+            else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else length += 3;
+        }
+        return length;
+    }
+
+    /**
+     * Consumer of the log lines read
+     */
+    public interface LineConsumer {
+        /**
+         * Consuming a log line
+         * @param line the log line
+         * @throws IOException if the line can not be consumed
+         */
+        void accept(@NotNull String line) throws IOException;
+    }
+
+    /**
+     * A batch of logs appended to the log file
+     */
+    private static final class Batch {
+        private final long start;
+        private final long end;
+        private final List<Entry> entries;
+        private long minTime = Long.MAX_VALUE;
+        private long maxTime = Long.MIN_VALUE;
+
+        private Batch(final long start, final long end, @NotNull final List<Entry> entries) {
+            this.start = start;
+            this.end = end;
+            this.entries = entries;
+            for (final Entry entry : entries) {
+                minTime = Math.min(minTime, entry.minTime);
+                maxTime = Math.max(maxTime, entry.maxTime);
+            }
+        }
+    }
+
+    /**
+     * Offsets of an event, in a batch
+     */
+    private static final class Entry {
+        private final String event;
+        private long minTime = Long.MAX_VALUE;
+        private long maxTime = Long.MIN_VALUE;
+        private long[] offsets = new long[4];
+        private long[] times = new long[4];
+        private int size = 0;
+        private boolean exact = true; // if the time of each log is known
+
+        private Entry(@NotNull final String event) {
+            this.event = event;
+        }
+
+        private void add(final long offset, final long time) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+                times = Arrays.copyOf(times, size * 2);
+            }
+            offsets[size] = offset;
+            times[size++] = time;
+            minTime = Math.min(minTime, time);
+            maxTime = Math.max(maxTime, time);
+        }
+    }
+}
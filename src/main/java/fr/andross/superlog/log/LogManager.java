@@ -18,18 +18,22 @@
 package fr.andross.superlog.log;
 
 import fr.andross.superlog.SuperLog;
+import fr.andross.superlog.utils.LoggedEvent;
 import fr.andross.superlog.utils.Utils;
 import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
-import org.bukkit.event.Cancellable;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 
 /**
@@ -38,10 +42,54 @@ import java.util.logging.Level;
  * @author Andross
  */
 public final class LogManager {
+    private static final int QUEUE_CAPACITY = 1 << 16;
+    private static final int BATCH_SIZE = 1024;
     private final SuperLog pl;
-    private final Map<File, List<String>> cache = new HashMap<>();
-    private final Map<String, List<CommandSender>> live = new HashMap<>();
-    private boolean debug = false;
+    private final List<LogSink> cache = new ArrayList<>(); // sinks with waiting logs, only used by the log worker
+    private final Map<String, List<CommandSender>> live = new ConcurrentHashMap<>();
+    private final Queue<LogRecord> queue = new ConcurrentLinkedQueue<>();
+    private final Queue<CompletableFuture<Integer>> saveRequests = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong memory = new AtomicLong(); // approximate memory used by the queued and cached logs
+    private final AtomicInteger sampleCounter = new AtomicInteger();
+    private final LongAdder memoryDropped = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+    private final LogStats stats = new LogStats();
+    private final LogProfiler profiler = new LogProfiler();
+    private final LogWriterPool writers;
+    private final LogGovernor governor;
+    private final boolean instant;
+    private final long flushBytes;
+    private final int flushLines;
+    private final long flushLatency;
+    private final long memoryBudget;
+    private final OverflowPolicy overflow;
+    private final int sampleRate;
+    private final long blockTimeout;
+    private long pendingBytes = 0; // only used by the log worker
+    private int pendingLines = 0;
+    private long oldestPending = 0;
+    private long cachedMemory = 0;
+    private final Thread worker;
+    private volatile boolean running = true;
+    private volatile boolean debug = false;
+
+    /**
+     * What to do with the new events when the memory budget is reached.
+     * High priority events are never refused because of the memory budget.
+     */
+    public enum OverflowPolicy {
+        /** Keeping all events, the cached logs are saved early **/
+        FLUSH,
+        /** Dropping low priority events from 75% of the budget, and normal priority events from 100% **/
+        DROP,
+        /** Keeping one event out of the sample rate **/
+        SAMPLE,
+        /** Async events wait for memory to be released, other events are dropped **/
+        BLOCK
+    }
 
     /**
      * Should not be instantiated. Use {@link SuperLog#getLogManager()} instead.
@@ -54,120 +102,324 @@ public final class LogManager {
         // Running utilities
         pl.getLogUtils().gzipOldLogs(sender);
         pl.getLogUtils().deleteOldLogs(sender);
+
+        // Open log files
+        final int maxOpenFiles = pl.getConfig().getInt("max-open-files", 64);
+        writers = new LogWriterPool(pl.getLogger(), maxOpenFiles < 1 ? 64 : maxOpenFiles, pl.getConfig().getBoolean("index-logs", true));
+
+        // Group commit: cached logs are also saved as soon as a limit is reached
+        instant = pl.getConfig().getInt("save-delay") == 0;
+        flushBytes = Math.max(0L, pl.getConfig().getLong("flush.bytes", 1048576L));
+        flushLines = Math.max(0, pl.getConfig().getInt("flush.lines", 10000));
+        flushLatency = TimeUnit.SECONDS.toNanos(Math.max(0L, pl.getConfig().getLong("flush.max-latency", 60L)));
+
+        // Memory budget
+        final long budget = pl.getConfig().getLong("memory.budget", 67108864L);
+        memoryBudget = budget < 1 ? 67108864L : budget;
+        final String policy = pl.getConfig().getString("memory.overflow", "FLUSH");
+        OverflowPolicy overflowPolicy = OverflowPolicy.FLUSH;
+        try {
+            if (policy != null) overflowPolicy = OverflowPolicy.valueOf(policy.trim().toUpperCase());
+        } catch (final IllegalArgumentException e) {
+            final String prefix = pl.getLogUtils().getColoredString("messages.prefix");
+            sender.sendMessage(prefix + Utils.color("&c[Config] Invalid '&ememory.overflow&c'. Using default: FLUSH."));
+        }
+        overflow = overflowPolicy;
+        sampleRate = Math.max(1, pl.getConfig().getInt("memory.sample-rate", 10));
+        blockTimeout = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, pl.getConfig().getLong("memory.block-timeout", 1000L)));
+
+        // Load governor
+        final List<String> errors = new ArrayList<>();
+        governor = new LogGovernor(pl.getLogger(), pl.getConfig().getConfigurationSection("governor"), errors);
+        if (!errors.isEmpty()) {
+            final String prefix = pl.getLogUtils().getColoredString("messages.prefix");
+            for (final String error : errors) sender.sendMessage(prefix + Utils.color("&c[Config] " + error));
+        }
+
+        // Starting the log worker, rendering the captured events
+        worker = new Thread(this::work, "SuperLog Worker");
+        worker.setDaemon(true);
+        worker.start();
+        Bukkit.getScheduler().runTaskTimer(pl, () -> {
+            stats.tick();
+            governor.tick(stats.getCaptureNanosPerTick());
+            if (stats.getTick() % LogCoalescer.IDLE_TICKS == 0) flushCoalesced(true);
+        }, 1L, 1L);
     }
 
     /**
-     * Saving a log
+     * Saving a log.
+     * The event is captured on the current thread, and rendered later by the log worker.
+     * If too many events are waiting to be rendered, the event is dropped.
+     * If the memory budget is reached, the overflow policy applies.
      * @param log the event logged
      */
     public void log(@NotNull final LogSerializer log) {
-        if (debug) pl.getLogger().info("[Debug] Start log processing..");
+        log(log.capture(), log.getEvent().isAsynchronous());
+    }
 
-        // Adding log
-        final File f = pl.getLogUtils().generateFile(log);
-        if (f == null) {
-            if (debug) pl.getLogger().info("[Debug] Stopping log processing, as I can not create a log file (maybe invalid 'logs-format'?)");
+    /**
+     * Saving a captured log
+     * @param record the captured event
+     * @param async if the event is called asynchronously
+     */
+    void log(@NotNull final LogRecord record, final boolean async) {
+        if (memory.get() + record.getSize() > memoryBudget - (memoryBudget >> 2) && !admit(record, async)) return;
+        if (queued.incrementAndGet() > QUEUE_CAPACITY) {
+            queued.decrementAndGet();
+            dropped.increment();
             return;
         }
-        String cancelled = "";
-        if (log.getEvent() instanceof Cancellable) cancelled = ((Cancellable) log.getEvent()).isCancelled() ? "[Cancelled]" : "";
-        final String message = "[" + pl.getLogUtils().getCurrentLogTime() + "][" + log.getEvent().getEventName() + "]" + cancelled + ": " + log.getMessage();
-
-        synchronized(cache) {
-            // Adding directly in file?
-            if (pl.getConfig().getInt("save-delay") == 0) {
-                save(f, new String[] { message });
-                return;
+        memory.addAndGet(record.getSize());
+        queue.offer(record);
+    }
+
+    /**
+     * Applying the overflow policy, when the memory used is getting close to the budget
+     * @param record the captured event
+     * @param async if the event is called asynchronously
+     * @return true if the event should be kept, otherwise false
+     */
+    private boolean admit(@NotNull final LogRecord record, final boolean async) {
+        if (record.getPriority() == LogPriority.HIGH) return true;
+        final boolean full = memory.get() + record.getSize() > memoryBudget;
+
+        switch (overflow) {
+            case FLUSH:
+                if (full) LockSupport.unpark(worker);
+                return true;
+            case SAMPLE:
+                if (!full || sampleCounter.incrementAndGet() % sampleRate == 0) return true;
+                sampledOut.increment();
+                return false;
+            case BLOCK:
+                if (!full) return true;
+                if (async) {
+                    blocked.increment();
+                    final long deadline = System.nanoTime() + blockTimeout;
+                    while (running && memory.get() + record.getSize() > memoryBudget && System.nanoTime() < deadline) {
+                        LockSupport.unpark(worker);
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                    }
+                    if (memory.get() + record.getSize() <= memoryBudget) return true;
+                }
+                break;
+            default:
+                if (!full && record.getPriority() != LogPriority.LOW) return true;
+        }
+
+        memoryDropped.increment();
+        return false;
+    }
+
+    /**
+     * Log worker loop.
+     * The log worker is the only thread using the cache and writing logs, until it is stopped.
+     */
+    private void work() {
+        while (running) {
+            final int processed = drain(BATCH_SIZE);
+            if (pendingLines > 0) {
+                if (instant) write(LogStats.FlushReason.INSTANT);
+                else if (flushLatency > 0 && System.nanoTime() - oldestPending >= flushLatency) write(LogStats.FlushReason.LATENCY);
             }
+            CompletableFuture<Integer> request;
+            while ((request = saveRequests.poll()) != null) request.complete(write(LogStats.FlushReason.SAVE));
+            writers.closeIdle();
+            if (processed == 0) LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+        }
+    }
+
+    /**
+     * Processing captured events
+     * @param max maximum amount of events to process
+     * @return the amount of events processed
+     */
+    private int drain(final int max) {
+        int count = 0;
+        LogRecord record;
+        while (count < max && (record = queue.poll()) != null) {
+            queued.decrementAndGet();
+            memory.addAndGet(-record.getSize());
+            process(record);
+            count++;
+        }
+        return count;
+    }
 
-            // Or adding in cache
-            final List<String> logs = cache.getOrDefault(f, new ArrayList<>());
-            logs.add(message);
-            cache.put(f, logs);
+    /**
+     * Stopping the log worker, processing the remaining captured events on the current thread,
+     * saving all logs and closing the log files.
+     * Once stopped, calling it again only saves the events captured since.
+     * @return the amount of files saved
+     */
+    public int shutdown() {
+        if (Bukkit.isPrimaryThread()) flushCoalesced(false);
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+        drain(Integer.MAX_VALUE);
+        CompletableFuture<Integer> request;
+        while ((request = saveRequests.poll()) != null) request.complete(write(LogStats.FlushReason.SAVE));
+        final int count = write(LogStats.FlushReason.SHUTDOWN);
+        writers.closeAll();
+        return count;
+    }
+
+    /**
+     * Rendering a captured event, and adding it to its log file
+     * @param log the captured event
+     */
+    private void process(@NotNull final LogRecord log) {
+        final long start = System.nanoTime();
+
+        // Adding log
+        final LogSink sink = pl.getLogConfig().getRouter().route(log);
+        profiler.getRouting().add(System.nanoTime() - start);
+        final String logMessage = log.getMessage();
+        final String message = "[" + pl.getLogUtils().getLogTime(log.getTime()) + "][" + log.getEventName() + "]" + (log.isCancelled() ? "[Cancelled]" : "") + (log.getSampleRate() > 1 ? "[Sampled 1/" + log.getSampleRate() + "]" : "")
+                + (log.getCoalesced() > 1 ? "[Coalesced x" + log.getCoalesced() + "]" : "") + ": " + logMessage;
+
+        // Adding in cache, saved with the next group commit
+        if (sink.getLines().isEmpty()) cache.add(sink);
+        sink.add(message, log.getEventName(), log.getTime());
+        if (pendingLines++ == 0) oldestPending = System.nanoTime();
+        pendingBytes += message.length() + 1;
+        final long size = LogRecord.sizeOf(message);
+        cachedMemory += size;
+        final long used = memory.addAndGet(size);
+        if (flushLines > 0 && pendingLines >= flushLines) write(LogStats.FlushReason.LINES);
+        else if (flushBytes > 0 && pendingBytes >= flushBytes) write(LogStats.FlushReason.BYTES);
+        else if (used > memoryBudget) write(LogStats.FlushReason.MEMORY);
 
-        if (debug) pl.getLogger().info("[Debug] Log: OK");
+        if (debug) profiler.debug(log.getEventName(), "Rendered into " + sink.getFile().getName() + ".");
 
         // Live logging:
-        if (live.isEmpty() || log.getPlayerName() == null) return;
-        final List<CommandSender> senders = live.get(log.getPlayerName());
-        if (senders != null && !senders.isEmpty()) {
-            String logLiveMessage = pl.getConfig().getString("logs-live-format");
-            if (logLiveMessage != null) {
-                logLiveMessage = Utils.color(logLiveMessage.replace("{TIME}", pl.getLogUtils().getCurrentLogLiveTime())
-                        .replace("{EVENT}", log.getEvent().getEventName())
-                        .replace("{LOG}", log.getMessage()));
+        if (!live.isEmpty() && log.getPlayerName() != null) {
+            final List<CommandSender> senders = live.get(log.getPlayerName());
+            if (senders != null && !senders.isEmpty()) {
+                final String logLiveMessage = Utils.color(pl.getLogConfig().getSettings().getLiveMessage(pl.getLogUtils().getLogLiveTime(log.getTime()), log.getEventName(), logMessage));
                 for (final CommandSender sender : senders)
                     sender.sendMessage(logLiveMessage);
             }
         }
+
+        stats.addRender(System.nanoTime() - start);
     }
 
     /**
-     * Saving logs into the file
-     * @param f the file
-     * @param messages the logs
+     * Saving the waiting logs of a sink into its file
+     * @param sink the sink
      * @return if the file was correctly saved, or not
      */
-    private boolean save(@NotNull final File f, @NotNull final String[] messages) {
-        // Check file (create folders etc.)
-        if (!f.exists()) {
-            try {
-                final File directory = f.getParentFile();
-                if (!directory.exists()) directory.mkdirs();
-                f.createNewFile();
-            } catch (final Exception e) {
-                pl.getLogger().log(Level.WARNING, "Can not create file '" + f.getName() + "'.", e);
-                return false;
-            }
-        }
-
+    private boolean save(@NotNull final LogSink sink) {
         // Write log
-        try (final Writer writer = new OutputStreamWriter(new FileOutputStream(f, true), StandardCharsets.UTF_8)) {
-            for (final String message : messages)
-                writer.append(message).append(System.lineSeparator());
+        try {
+            writers.write(sink);
         } catch (final Exception e) {
-            pl.getLogger().log(Level.WARNING, "Error writing logs in '" + f.getName() + "'.", e);
+            pl.getLogger().log(Level.WARNING, "Error writing logs in '" + sink.getFile().getName() + "'.", e);
             return false;
         }
 
         // Clearing cache
-        if (cache.containsKey(f)) cache.get(f).clear();
+        sink.clear();
         return true;
     }
 
     /**
-     * Saving all logs
+     * Writing all cached logs into their files, with one batched append per file
+     * @param reason why the logs are written
      * @return the amount of files saved
      */
-    public int saveAll() {
+    private int write(@NotNull final LogStats.FlushReason reason) {
         int count = 0;
+        int lines = 0;
+        long remaining = 0;
 
+        // Only contended when the log worker is stopped
         synchronized (cache) {
-            final Iterator<Map.Entry<File, List<String>>> i = cache.entrySet().iterator();
+            final Iterator<LogSink> i = cache.iterator();
             while (i.hasNext()) {
-                final Map.Entry<File, List<String>> map = i.next();
-                final List<String> logs = map.getValue();
-                if (logs == null || logs.isEmpty()) {
+                final LogSink sink = i.next();
+                final int size = sink.getLines().size();
+                if (save(sink)) {
                     i.remove();
-                    continue;
-                }
-                if (save(map.getKey(), logs.toArray(new String[0]))) count++;
+                    count++;
+                    lines += size;
+                } else for (final String log : sink.getLines()) remaining += LogRecord.sizeOf(log);
             }
+            pendingBytes = 0;
+            pendingLines = 0;
+            memory.addAndGet(remaining - cachedMemory);
+            cachedMemory = remaining;
         }
+        if (lines > 0) stats.addFlush(reason, count, lines);
+        return count;
+    }
+
+    /**
+     * Logging the coalesced events still waiting in their window.
+     * Should be called on the main thread.
+     * @param idle true to only log the windows of the players or entities stopped for a while, false for all windows
+     */
+    public void flushCoalesced(final boolean idle) {
+        final LogConfig config = pl.getLogConfig();
+        if (config == null) return;
+        final long tick = stats.getTick();
+        for (final LoggedEvent loggedEvent : config.getEvents().values()) {
+            final LogCoalescer coalescer = loggedEvent.getCoalescer();
+            if (coalescer == null) continue;
+            if (idle) coalescer.flushIdle(tick);
+            else coalescer.flushAll();
+        }
+    }
+
+    /**
+     * Saving all logs.
+     * While the log worker is running, the logs are saved by the log worker, and this method waits for it.
+     * @return the amount of files saved
+     */
+    public int saveAll() {
+        int count = 0;
+
+        if (running && Thread.currentThread() != worker) {
+            final CompletableFuture<Integer> request = new CompletableFuture<>();
+            saveRequests.offer(request);
+            LockSupport.unpark(worker);
+            // Log worker stopped in between?
+            if (!running && saveRequests.remove(request)) request.complete(write(LogStats.FlushReason.SAVE));
+            try {
+                count = request.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (final ExecutionException e) {
+                pl.getLogger().log(Level.WARNING, "Error saving logs.", e);
+            }
+        } else count = write(LogStats.FlushReason.SAVE);
 
         if (!pl.isEnabled() || count == 0) return count;
-        String logMessage = pl.getLogUtils().getColoredString("messages.logs-saved");
+        final LogSettings settings = pl.getLogConfig().getSettings();
+        String logMessage = settings.getLogsSavedMessage();
         if (logMessage != null) {
-            final String prefix = pl.getLogUtils().getColoredString("messages.prefix");
             logMessage = logMessage.replace("{LOGS}", Integer.toString(count));
-            if (pl.getConfig().getBoolean("logs-in-console")) Bukkit.getConsoleSender().sendMessage(prefix + logMessage);
-            if (pl.getConfig().getBoolean("logs-in-game")) Bukkit.broadcast(prefix + logMessage, "superlog.getlogs");
+            if (settings.isLogsInConsole()) Bukkit.getConsoleSender().sendMessage(settings.getPrefix() + logMessage);
+            if (settings.isLogsInGame()) Bukkit.broadcast(settings.getPrefix() + logMessage, "superlog.getlogs");
         }
 
         return count;
     }
 
+    /**
+     * Closing all open log files. They are opened again when needed.
+     */
+    public void closeFiles() {
+        writers.closeAll();
+    }
+
     /**
      * Sending alert commands if logged
      * @param pName player name
@@ -175,13 +427,14 @@ public final class LogManager {
      */
     public void alertCommands(@NotNull final String pName, @NotNull final String command) {
         // Should the command be alerted?
-        final Set<String> alertCommands = pl.getLogConfig().getAlertCommands();
+        final LogSettings settings = pl.getLogConfig().getSettings();
+        final Set<String> alertCommands = settings.getAlertCommands();
         if (!alertCommands.contains("*") && alertCommands.stream().noneMatch(command::startsWith)) return;
 
         // Preparing message
-        String alertMessage = pl.getConfig().getString("commands-alert.message");
+        String alertMessage = settings.getAlertMessage();
         if (alertMessage == null) return; // no message set
-        final String prefix = Utils.color(pl.getConfig().getString("messages.prefix"));
+        final String prefix = settings.getPrefix();
         alertMessage = Utils.color(alertMessage.replace("{PLAYER}", pName).replace("{COMMAND}", command));
         final String finalMessage = prefix + alertMessage;
 
@@ -200,6 +453,106 @@ public final class LogManager {
         return live;
     }
 
+    /**
+     * Get the amount of captured events waiting to be rendered
+     * @return the amount of captured events waiting
+     */
+    public int getQueueSize() {
+        return queued.get();
+    }
+
+    /**
+     * Get the amount of events dropped because too many events were waiting to be rendered
+     * @return the amount of dropped events
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Get the approximate memory used by the logs waiting to be saved
+     * @return the approximate memory used, in bytes
+     */
+    public long getPendingMemory() {
+        return memory.get();
+    }
+
+    /**
+     * Get the memory budget for the logs waiting to be saved
+     * @return the memory budget, in bytes
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Get the policy applied when the memory budget is reached
+     * @return the overflow policy
+     */
+    @NotNull
+    public OverflowPolicy getOverflowPolicy() {
+        return overflow;
+    }
+
+    /**
+     * Get the amount of events dropped because of the memory budget
+     * @return the amount of dropped events
+     */
+    public long getMemoryDropped() {
+        return memoryDropped.sum();
+    }
+
+    /**
+     * Get the amount of events not kept by the sampling overflow policy
+     * @return the amount of sampled out events
+     */
+    public long getSampledOut() {
+        return sampledOut.sum();
+    }
+
+    /**
+     * Get the amount of async events which waited for memory to be released
+     * @return the amount of blocked events
+     */
+    public long getBlocked() {
+        return blocked.sum();
+    }
+
+    /**
+     * Get the amount of log files currently open
+     * @return the amount of open log files
+     */
+    public int getOpenFiles() {
+        return writers.size();
+    }
+
+    /**
+     * Get the pipeline stats
+     * @return the pipeline stats
+     */
+    @NotNull
+    public LogStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Get the events instrumentation
+     * @return the events profiler
+     */
+    @NotNull
+    public LogProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Get the load governor
+     * @return the load governor
+     */
+    @NotNull
+    public LogGovernor getGovernor() {
+        return governor;
+    }
+
     /**
      * If the plugin should debug every log
      * @return true if the plugin should debug every log, otherwise false
@@ -0,0 +1,44 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Priority of a logged event, used to choose which events are kept under pressure
+ * @version 1.2
+ * @author Andross
+ */
+public enum LogPriority {
+    LOW,
+    NORMAL,
+    HIGH;
+
+    /**
+     * Get a priority from its name
+     * @param name the name, case insensitive
+     * @return the priority, null if unknown
+     */
+    @Nullable
+    public static LogPriority of(@NotNull final String name) {
+        for (final LogPriority priority : values())
+            if (priority.name().equalsIgnoreCase(name.trim())) return priority;
+        return null;
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Always-on instrumentation of the logged events: counters and latency histograms per event class,
+ * and a ring buffer of the debug messages, instead of the console.
+ * @version 1.2
+ * @author Andross
+ */
+public final class LogProfiler {
+    private static final int DEBUG_SIZE = 512;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+    private final Map<String, EventProfile> events = new ConcurrentHashMap<>();
+    private final Histogram routing = new Histogram();
+    private final String[] debug = new String[DEBUG_SIZE];
+    private long debugCount = 0;
+
+    /**
+     * What happened to a logged event
+     */
+    public enum Outcome {
+        /** Captured and queued **/
+        ACCEPTED,
+        /** Ignored by the conditions of the event, or by a NPC check **/
+        IGNORED,
+        /** Sampled out **/
+        SAMPLED,
+        /** Coalesced with the previous events **/
+        COALESCED,
+        /** Degraded by the load governor (only counted, or not logged) **/
+        DEGRADED
+    }
+
+    /**
+     * Get the profile of an event class, creating it if needed
+     * @param eventName the event name
+     * @return the event profile
+     */
+    @NotNull
+    public EventProfile getProfile(@NotNull final String eventName) {
+        return events.computeIfAbsent(eventName, EventProfile::new);
+    }
+
+    /**
+     * Get the time spent routing records to their log file, on the log worker
+     * @return the routing histogram
+     */
+    @NotNull
+    public Histogram getRouting() {
+        return routing;
+    }
+
+    /**
+     * Get the events which spent the most time into SuperLog executors
+     * @param amount maximum amount of events
+     * @return the events profiles, most expensive first
+     */
+    @NotNull
+    public List<EventProfile> getTopOffenders(final int amount) {
+        return events.values().stream()
+                .filter(p -> p.getTotalNanos() > 0)
+                .sorted(Comparator.comparingLong(EventProfile::getTotalNanos).reversed())
+                .limit(amount)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Recording a debug message into the ring buffer
+     * @param eventName the event name
+     * @param message the debug message
+     */
+    public void debug(@NotNull final String eventName, @NotNull final String message) {
+        final String line = LocalTime.now().format(TIME_FORMAT) + " [" + eventName + "] " + message;
+        synchronized (debug) {
+            debug[(int) (debugCount++ % DEBUG_SIZE)] = line;
+        }
+    }
+
+    /**
+     * Get the last debug messages
+     * @param amount maximum amount of messages
+     * @return the last debug messages, oldest first
+     */
+    @NotNull
+    public List<String> getDebug(final int amount) {
+        synchronized (debug) {
+            final int size = (int) Math.min(Math.min(amount, DEBUG_SIZE), debugCount);
+            final List<String> messages = new ArrayList<>(size);
+            for (long i = debugCount - size; i < debugCount; i++) messages.add(debug[(int) (i % DEBUG_SIZE)]);
+            return messages;
+        }
+    }
+
+    /**
+     * Counters and latency histograms of a logged event class
+     */
+    public static final class EventProfile {
+        private final String name;
+        private final LongAdder[] outcomes = new LongAdder[Outcome.values().length];
+        private final LongAdder totalNanos = new LongAdder();
+        private final Histogram serialization = new Histogram();
+        private final Histogram enqueue = new Histogram();
+
+        private EventProfile(@NotNull final String name) {
+            this.name = name;
+            for (int i = 0; i < outcomes.length; i++) outcomes[i] = new LongAdder();
+        }
+
+        /**
+         * Counting what happened to an event
+         * @param outcome the outcome
+         */
+        public void count(@NotNull final Outcome outcome) {
+            outcomes[outcome.ordinal()].increment();
+        }
+
+        /**
+         * Adding time spent into the executor
+         * @param nanos time spent, in nanoseconds
+         */
+        public void addTotal(final long nanos) {
+            totalNanos.add(nanos);
+        }
+
+        /**
+         * Get the event name
+         * @return the event name
+         */
+        @NotNull
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Get the amount of events with this outcome
+         * @param outcome the outcome
+         * @return the amount of events
+         */
+        public long getCount(@NotNull final Outcome outcome) {
+            return outcomes[outcome.ordinal()].sum();
+        }
+
+        /**
+         * Get the total time spent into the executor
+         * @return the time spent, in nanoseconds
+         */
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        /**
+         * Get the time spent serializing the event
+         * @return the serialization histogram
+         */
+        @NotNull
+        public Histogram getSerialization() {
+            return serialization;
+        }
+
+        /**
+         * Get the time spent capturing and queuing the serialized event
+         * @return the enqueue histogram
+         */
+        @NotNull
+        public Histogram getEnqueue() {
+            return enqueue;
+        }
+    }
+
+    /**
+     * Latency histogram, with power of two nanoseconds buckets
+     */
+    public static final class Histogram {
+        private static final int BUCKETS = 40;
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+        Histogram() {
+            for (int i = 0; i < BUCKETS; i++) buckets[i] = new LongAdder();
+        }
+
+        /**
+         * Adding a measure
+         * @param nanos the measure, in nanoseconds
+         */
+        public void add(final long nanos) {
+            buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, nanos)))].increment();
+        }
+
+        /**
+         * Get the amount of measures
+         * @return the amount of measures
+         */
+        public long getCount() {
+            long count = 0;
+            for (final LongAdder bucket : buckets) count += bucket.sum();
+            return count;
+        }
+
+        /**
+         * Get the upper bound of a percentile
+         * @param percentile the percentile, between 0 and 1
+         * @return the upper bound of the bucket holding this percentile, in nanoseconds; 0 if no measure
+         */
+        public long getPercentile(final double percentile) {
+            final long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) total += counts[i] = buckets[i].sum();
+            if (total == 0) return 0;
+            final long rank = (long) Math.ceil(percentile * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank && counts[i] > 0) return 1L << i;
+            }
+            return 1L << (BUCKETS - 1);
+        }
+    }
+}
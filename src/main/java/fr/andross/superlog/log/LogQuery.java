@@ -0,0 +1,539 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import fr.andross.superlog.utils.LoggedEvent;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * A structured query over the logs of all players (e.g: player=Notch event in (BlockBreak, BlockPlace) world=world_nether x=-100..100).
+ * Clauses are parsed once; for each event, they are compiled into a predicate over the slots of its message,
+ * which are read back from the log line with the message template of the event.
+ * The logs tree is scanned by a fork-join pool, with a limit of results and a time budget.
+ * @version 1.2
+ * @author Andross
+ */
+public final class LogQuery implements LogSearch.Filter {
+    private static final String[] AXES = { "LOCX", "LOCY", "LOCZ" };
+    private static final Compiled NEVER = new Compiled(null, v -> false);
+    private final Map<String, LoggedEvent> events;
+    private final List<Clause> players = new ArrayList<>();
+    private final List<Clause> eventClauses = new ArrayList<>();
+    private final List<Clause> texts = new ArrayList<>();
+    private final List<Clause> cancelled = new ArrayList<>();
+    private final List<Clause> fields = new ArrayList<>();
+    private final Clause[] box = new Clause[AXES.length]; // coordinates, checked together on the same location
+    private final Map<String, Compiled> compiled = new ConcurrentHashMap<>();
+    private final LogTimeWindow window;
+    private final int limit;
+    private final long budget;
+    // Running
+    private final AtomicInteger found = new AtomicInteger();
+    private final AtomicInteger searchedFiles = new AtomicInteger();
+    private final AtomicLong searchedBytes = new AtomicLong();
+    private volatile long deadline = Long.MAX_VALUE;
+    private volatile boolean timedOut = false;
+
+    /**
+     * Comparison of a clause
+     */
+    private enum Operator {
+        /** Equals one of the values, ignoring case **/
+        EQUALS,
+        /** Equals none of the values, ignoring case **/
+        NOT_EQUALS,
+        /** Contains one of the values, ignoring case **/
+        CONTAINS,
+        /** Number in the range **/
+        RANGE
+    }
+
+    /**
+     * Parsing a query
+     * @param text the query
+     * @param config the current config, holding the logged events and their messages
+     * @param limit maximum amount of results, if not set in the query
+     * @param budget maximum time spent running the query, in milliseconds
+     * @return the query
+     * @throws IllegalArgumentException if the query is invalid
+     */
+    @NotNull
+    public static LogQuery parse(@NotNull final String text, @NotNull final LogConfig config, final int limit, final long budget) throws IllegalArgumentException {
+        return new LogQuery(text, config.getEvents(), config.getRouter(), config.getSettings().getClock(), limit, budget);
+    }
+
+    LogQuery(@NotNull final String text, @NotNull final Map<String, LoggedEvent> events, @NotNull final LogRouter router, @NotNull final LogClock clock,
+             final int defaultLimit, final long budget) {
+        this.events = events;
+        this.budget = budget;
+        long from = Long.MIN_VALUE, to = Long.MAX_VALUE;
+        int limit = defaultLimit;
+
+        final Tokenizer tokens = new Tokenizer(text);
+        while (tokens.hasNext()) {
+            final String key = tokens.nextKey();
+            if (key.equalsIgnoreCase("and")) continue;
+            final Clause clause = tokens.nextClause(key.toUpperCase(Locale.ROOT));
+            switch (clause.key) {
+                case "PLAYER": players.add(clause); break;
+                case "EVENT": eventClauses.add(clause); break;
+                case "TEXT": texts.add(clause); break;
+                case "CANCELLED": cancelled.add(clause); break;
+                case "X": case "Y": case "Z":
+                    if (clause.operator != Operator.RANGE && clause.operator != Operator.EQUALS) throw new IllegalArgumentException("Coordinates only accept '=' (e.g: x=10 or x=-100..100).");
+                    box[clause.key.charAt(0) - 'X'] = clause;
+                    break;
+                case "FROM": from = LogTimeWindow.parse(clause.single(), false, clock); break;
+                case "TO": to = LogTimeWindow.parse(clause.single(), true, clock); break;
+                case "LIMIT":
+                    try {
+                        limit = Integer.parseInt(clause.single());
+                    } catch (final NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid limit '" + clause.single() + "'.");
+                    }
+                    if (limit < 1 || limit > defaultLimit) throw new IllegalArgumentException("The limit must be between 1 and " + defaultLimit + ".");
+                    break;
+                default: fields.add(clause);
+            }
+        }
+        this.limit = limit;
+        this.window = from == Long.MIN_VALUE && to == Long.MAX_VALUE ? null : new LogTimeWindow(from, to, router, clock);
+    }
+
+    @Override
+    public boolean test(@NotNull final String line) {
+        // [time][Event][tags...]: message
+        final int start = line.indexOf("][");
+        if (!line.startsWith("[") || start < 0) return false;
+        final int end = line.indexOf(']', start + 2);
+        if (end < 0) return false;
+        final int body = line.indexOf("]: ", end);
+        if (body < 0) return false;
+        final String eventName = line.substring(start + 2, end);
+        if (!testEvent(eventName)) return false;
+
+        final Compiled c = compiled.computeIfAbsent(eventName, this::compile);
+        if (c == NEVER) return false;
+        final String message = line.substring(body + 3);
+        for (final Clause clause : texts) if (!clause.test(message)) return false;
+        if (!cancelled.isEmpty()) {
+            // Tag written before the message
+            final String tag = String.valueOf(line.substring(end, body + 1).contains("[Cancelled]"));
+            for (final Clause clause : cancelled) if (!clause.test(tag)) return false;
+        }
+        if (c.template == null) return true;
+        final String[] values = c.template.parse(message);
+        return values != null && c.predicate.test(values);
+    }
+
+    @Override
+    public boolean testEvent(@NotNull final String eventName) {
+        final String shortName = eventName.endsWith("Event") ? eventName.substring(0, eventName.length() - 5) : eventName;
+        for (final Clause clause : eventClauses) {
+            // Negations must hold for both names, others for any name
+            final boolean match = clause.operator == Operator.NOT_EQUALS ? clause.test(eventName) && clause.test(shortName) : clause.test(eventName) || clause.test(shortName);
+            if (!match) return false;
+        }
+        return true;
+    }
+
+    /**
+     * If the logs of a player can match
+     * @param playerName the player name, null for the logs not related to a player
+     * @return true if the logs of this player can match, otherwise false
+     */
+    public boolean testPlayer(@Nullable final String playerName) {
+        if (playerName == null) return players.isEmpty();
+        for (final Clause clause : players) if (!clause.test(playerName)) return false;
+        return true;
+    }
+
+    /**
+     * Compiling the clauses for the message of an event
+     * @param eventName the event name
+     * @return the compiled clauses
+     */
+    @NotNull
+    private Compiled compile(@NotNull final String eventName) {
+        final boolean located = Arrays.stream(box).anyMatch(Objects::nonNull);
+        if (fields.isEmpty() && !located) return new Compiled(null, v -> true);
+        final LoggedEvent event = events.get(eventName);
+        if (event == null) { // logs of an event not logged anymore: the message is unknown, as if it had none of the slots
+            if (located) return NEVER;
+            for (final Clause clause : fields) if (clause.operator != Operator.NOT_EQUALS) return NEVER;
+            return new Compiled(null, v -> true);
+        }
+        final LogTemplate template = event.getTemplate();
+
+        Predicate<String[]> predicate = v -> true;
+        for (final Clause clause : fields) {
+            final int[] slots = getSlots(template, clause.key);
+            if (slots.length == 0) {
+                if (clause.operator == Operator.NOT_EQUALS) continue;
+                return NEVER;
+            }
+            // Negations must hold for all slots, others for any slot
+            final boolean all = clause.operator == Operator.NOT_EQUALS;
+            predicate = predicate.and(v -> {
+                for (final int slot : slots) if (v[slot] != null && clause.test(v[slot]) != all) return !all;
+                return all;
+            });
+        }
+
+        // Bounding box: all coordinates of the same location (e.g: {block.locx} {block.locy} {block.locz})
+        if (located) {
+            final List<int[]> locations = new ArrayList<>();
+            final Set<String> prefixes = new LinkedHashSet<>(); // null for {locx} {locy} {locz}
+            for (int slot = 0; slot < template.size(); slot++) if (template.getArg(slot).startsWith("LOC")) prefixes.add(template.getPrefix(slot));
+            for (final String prefix : prefixes) {
+                final int[] location = new int[AXES.length];
+                for (int axis = 0; axis < AXES.length; axis++) location[axis] = box[axis] == null ? -1 : template.getSlot(prefix == null ? AXES[axis] : prefix + "." + AXES[axis]);
+                boolean valid = true;
+                for (int axis = 0; axis < AXES.length; axis++) if (box[axis] != null && location[axis] < 0) valid = false;
+                if (valid) locations.add(location);
+            }
+            if (locations.isEmpty()) return NEVER;
+            predicate = predicate.and(v -> {
+                for (final int[] location : locations) {
+                    boolean inside = true;
+                    for (int axis = 0; axis < AXES.length && inside; axis++) inside = box[axis] == null || (v[location[axis]] != null && box[axis].test(v[location[axis]]));
+                    if (inside) return true;
+                }
+                return false;
+            });
+        }
+        return new Compiled(template, predicate);
+    }
+
+    /**
+     * Get the slots of a message matching a clause key
+     * @param template the message
+     * @param key the clause key, uppercased (e.g: WORLD, MATERIAL, BLOCK.TYPE)
+     * @return the slots
+     */
+    @NotNull
+    private static int[] getSlots(@NotNull final LogTemplate template, @NotNull final String key) {
+        final List<Integer> slots = new ArrayList<>();
+        for (int slot = 0; slot < template.size(); slot++) {
+            final String arg = template.getArg(slot);
+            switch (key) {
+                case "WORLD": if (arg.equals("LOCWORLD") || template.getKey(slot).equals("WORLD")) slots.add(slot); break;
+                case "MATERIAL": if (arg.equals("TYPE")) slots.add(slot); break;
+                default: if (template.getKey(slot).equals(key)) slots.add(slot);
+            }
+        }
+        return slots.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Running the query over the logs tree, on a fork-join pool.
+     * Stops when the limit of results is reached, or when the time budget is spent.
+     * @param logsFolder the logs folder (holding the 'players' folder)
+     * @param extension the log files extension (e.g: .log)
+     * @param pool the pool running the query
+     * @return the matching logs, tagged with their player name, in the order of the files
+     */
+    @NotNull
+    public List<String> run(@NotNull final File logsFolder, @NotNull final String extension, @NotNull final ForkJoinPool pool) {
+        deadline = System.currentTimeMillis() + budget;
+        final List<String> results = pool.invoke(new Scan(logsFolder, extension, null));
+        return results.size() > limit ? new ArrayList<>(results.subList(0, limit)) : results;
+    }
+
+    /**
+     * If the query stopped because its time budget was spent
+     * @return true if the results are partial, otherwise false
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * If the limit of results was reached
+     * @return true if the results may be partial, otherwise false
+     */
+    public boolean isLimited() {
+        return found.get() >= limit;
+    }
+
+    /**
+     * Get the amount of files searched
+     * @return the amount of files searched
+     */
+    public int getSearchedFiles() {
+        return searchedFiles.get();
+    }
+
+    /**
+     * Get the amount of bytes searched
+     * @return the amount of bytes searched
+     */
+    public long getSearchedBytes() {
+        return searchedBytes.get();
+    }
+
+    /**
+     * If the query should stop
+     * @return true if the limit is reached or the time budget spent, otherwise false
+     */
+    private boolean shouldStop() {
+        if (System.currentTimeMillis() > deadline) timedOut = true;
+        return timedOut || found.get() >= limit;
+    }
+
+    /**
+     * Scan of a folder or a log file
+     */
+    private final class Scan extends RecursiveTask<List<String>> {
+        private final File file;
+        private final String extension;
+        private final String playerName;
+
+        private Scan(@NotNull final File file, @NotNull final String extension, @Nullable final String playerName) {
+            this.file = file;
+            this.extension = extension;
+            this.playerName = playerName;
+        }
+
+        @Override
+        protected List<String> compute() {
+            if (shouldStop()) return Collections.emptyList();
+            if (file.isFile()) return search();
+
+            // Folder: its files and folders are scanned in parallel, results are kept in order
+            final File[] children = file.listFiles();
+            if (children == null) return Collections.emptyList();
+            Arrays.sort(children);
+            final boolean playersFolder = file.getName().equals("players") && playerName == null;
+            final List<Scan> scans = new ArrayList<>();
+            for (final File child : children) {
+                if (child.isDirectory()) {
+                    if (playersFolder && !testPlayer(child.getName())) continue;
+                    scans.add(new Scan(child, extension, playersFolder ? child.getName() : playerName));
+                } else if (LogSearch.isLogFile(child, extension) && (playerName != null || testPlayer(null))) scans.add(new Scan(child, extension, playerName));
+            }
+
+            final List<String> results = new ArrayList<>();
+            for (final Scan scan : invokeAll(scans)) results.addAll(scan.join());
+            return results;
+        }
+
+        @NotNull
+        private List<String> search() {
+            final List<String> results = new ArrayList<>();
+            final String tag = playerName == null ? "" : "[" + playerName + "]";
+            final int[] lines = { 0 };
+            final LogSearch.Filter filter = new LogSearch.Filter() {
+                @Override
+                public boolean test(@NotNull final String line) {
+                    // Time budget also checked while nothing matches
+                    if ((++lines[0] & 1023) == 0 && shouldStop()) throw new CancellationException();
+                    return LogQuery.this.test(line);
+                }
+
+                @Override
+                public boolean testEvent(@NotNull final String eventName) {
+                    return LogQuery.this.testEvent(eventName);
+                }
+            };
+            try {
+                LogSearch.read(file, filter, window, line -> {
+                    if (shouldStop()) throw new CancellationException();
+                    results.add(tag + line);
+                    found.incrementAndGet();
+                });
+            } catch (final CancellationException | IOException e) {
+                // Limit reached, time budget spent, or unreadable file: keeping the logs found
+            } finally {
+                searchedFiles.incrementAndGet();
+                searchedBytes.addAndGet(file.length());
+            }
+            return results;
+        }
+    }
+
+    /**
+     * The clauses of the query compiled for the message of an event
+     */
+    private static final class Compiled {
+        private final LogTemplate template; // null if no slot is needed
+        private final Predicate<String[]> predicate;
+
+        private Compiled(@Nullable final LogTemplate template, @NotNull final Predicate<String[]> predicate) {
+            this.template = template;
+            this.predicate = predicate;
+        }
+    }
+
+    /**
+     * A clause of the query (e.g: world=world_nether, event in (BlockBreak, BlockPlace), y=0..16, text~diamond)
+     */
+    private static final class Clause {
+        private final String key;
+        private final Operator operator;
+        private final String[] values;
+        private final double min, max;
+
+        private Clause(@NotNull final String key, @NotNull final Operator operator, @NotNull final String[] values) {
+            this.key = key;
+            this.operator = operator;
+            this.values = values;
+            double min = 0, max = 0;
+            if (operator == Operator.RANGE) {
+                final String[] bounds = values[0].split("\\.\\.", 2);
+                try {
+                    min = bounds[0].isEmpty() ? Double.NEGATIVE_INFINITY : Double.parseDouble(bounds[0]);
+                    max = bounds[1].isEmpty() ? Double.POSITIVE_INFINITY : Double.parseDouble(bounds[1]);
+                } catch (final NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid range '" + values[0] + "' for '" + key.toLowerCase(Locale.ROOT) + "'.");
+                }
+                if (min > max) throw new IllegalArgumentException("Empty range '" + values[0] + "' for '" + key.toLowerCase(Locale.ROOT) + "'.");
+            }
+            this.min = min;
+            this.max = max;
+        }
+
+        @NotNull
+        private String single() {
+            if (operator != Operator.EQUALS || values.length != 1) throw new IllegalArgumentException("'" + key.toLowerCase(Locale.ROOT) + "' only accepts one value (e.g: " + key.toLowerCase(Locale.ROOT) + "=value).");
+            return values[0];
+        }
+
+        private boolean test(@NotNull final String value) {
+            switch (operator) {
+                case EQUALS:
+                    for (final String v : values) if (v.equalsIgnoreCase(value)) return true;
+                    return false;
+                case NOT_EQUALS:
+                    for (final String v : values) if (v.equalsIgnoreCase(value)) return false;
+                    return true;
+                case CONTAINS:
+                    final String lower = value.toLowerCase(Locale.ROOT);
+                    for (final String v : values) if (lower.contains(v)) return true;
+                    return false;
+                default:
+                    try {
+                        final double number = Double.parseDouble(value.trim());
+                        return number >= min && number <= max;
+                    } catch (final NumberFormatException e) {
+                        return false;
+                    }
+            }
+        }
+    }
+
+    /**
+     * Reading the clauses of a query: key (=|!=|~|in) value, where value is a word, a "quoted text", a (list, of, values) or a min..max range
+     */
+    private static final class Tokenizer {
+        private final String text;
+        private int i = 0;
+
+        private Tokenizer(@NotNull final String text) {
+            this.text = text;
+            skipSpaces();
+        }
+
+        private boolean hasNext() {
+            return i < text.length();
+        }
+
+        @NotNull
+        private String nextKey() {
+            final int start = i;
+            while (i < text.length() && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '.' || text.charAt(i) == '_')) i++;
+            if (start == i) throw new IllegalArgumentException("Expected a key at '" + text.substring(start) + "'.");
+            final String key = text.substring(start, i);
+            skipSpaces();
+            return key;
+        }
+
+        @NotNull
+        private Clause nextClause(@NotNull final String key) {
+            final Operator operator;
+            if (text.startsWith("!=", i)) {
+                operator = Operator.NOT_EQUALS;
+                i += 2;
+            } else if (text.startsWith("=", i)) {
+                operator = Operator.EQUALS;
+                i++;
+            } else if (text.startsWith("~", i)) {
+                operator = Operator.CONTAINS;
+                i++;
+            } else if (text.regionMatches(true, i, "in", 0, 2) && (i + 2 == text.length() || text.charAt(i + 2) == ' ' || text.charAt(i + 2) == '(')) {
+                operator = Operator.EQUALS;
+                i += 2;
+            } else throw new IllegalArgumentException("Expected '=', '!=', '~' or 'in' after '" + key.toLowerCase(Locale.ROOT) + "'.");
+            skipSpaces();
+
+            // Values
+            final List<String> values = new ArrayList<>();
+            if (i < text.length() && text.charAt(i) == '(') {
+                i++;
+                skipSpaces();
+                while (i < text.length() && text.charAt(i) != ')') {
+                    values.add(nextValue(",)"));
+                    if (i < text.length() && text.charAt(i) == ',') i++;
+                    skipSpaces();
+                }
+                if (i >= text.length()) throw new IllegalArgumentException("Missing ')' after the values of '" + key.toLowerCase(Locale.ROOT) + "'.");
+                i++;
+            } else values.add(nextValue(""));
+            if (values.isEmpty() || values.contains("")) throw new IllegalArgumentException("Missing value for '" + key.toLowerCase(Locale.ROOT) + "'.");
+            skipSpaces();
+
+            // Numeric range: x=-100..100
+            if (operator == Operator.EQUALS && values.size() == 1 && values.get(0).contains("..")) return new Clause(key, Operator.RANGE, values.toArray(new String[0]));
+            if (operator == Operator.CONTAINS) values.replaceAll(v -> v.toLowerCase(Locale.ROOT));
+            return new Clause(key, operator, values.toArray(new String[0]));
+        }
+
+        @NotNull
+        private String nextValue(@NotNull final String separators) {
+            if (i < text.length() && text.charAt(i) == '"') {
+                final int end = text.indexOf('"', i + 1);
+                if (end < 0) throw new IllegalArgumentException("Missing '\"' at '" + text.substring(i) + "'.");
+                final String value = text.substring(i + 1, end);
+                i = end + 1;
+                skipSpaces();
+                return value;
+            }
+            final int start = i;
+            while (i < text.length() && text.charAt(i) != ' ' && separators.indexOf(text.charAt(i)) < 0) i++;
+            final String value = text.substring(start, i);
+            skipSpaces();
+            return value;
+        }
+
+        private void skipSpaces() {
+            while (i < text.length() && text.charAt(i) == ' ') i++;
+        }
+    }
+}
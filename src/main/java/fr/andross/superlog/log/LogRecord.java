@@ -0,0 +1,160 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An immutable snapshot of a serialized event, captured on the event thread
+ * and rendered later by the log worker
+ * @version 1.2
+ * @author Andross
+ */
+public final class LogRecord {
+    private final LogTemplate template;
+    private final String[] values;
+    private final long[] numbers;
+    private final String eventName;
+    private final String playerName;
+    private final String eventType;
+    private final boolean cancelled;
+    private final long time;
+    private final LogPriority priority;
+    private final int sampleRate;
+    private final int coalesced;
+    private final long size;
+
+    LogRecord(@NotNull final LogTemplate template, @NotNull final String[] values, @Nullable final long[] numbers,
+              @NotNull final String eventName, @Nullable final String playerName, @Nullable final String eventType,
+              final boolean cancelled, final long time, @NotNull final LogPriority priority, final int sampleRate,
+              final int coalesced) {
+        this.template = template;
+        this.values = values;
+        this.numbers = numbers;
+        this.eventName = eventName;
+        this.playerName = playerName;
+        this.eventType = eventType;
+        this.cancelled = cancelled;
+        this.time = time;
+        this.priority = priority;
+        this.sampleRate = sampleRate;
+        this.coalesced = coalesced;
+
+        // Approximate memory used by this record
+        long size = 64 + 16L * values.length + sizeOf(playerName) + sizeOf(eventType);
+        for (final String value : values) size += sizeOf(value);
+        if (numbers != null) size += 16 + 8L * numbers.length;
+        this.size = size;
+    }
+
+    /**
+     * Approximate memory used by a string
+     * @param s the string
+     * @return the approximate size, in bytes
+     */
+    static long sizeOf(@Nullable final String s) {
+        // Identity sentinels (numbers) are shared
+        return s == null || s == LogTemplate.NUMBER || s == LogTemplate.DECIMAL ? 0 : 40 + 2L * s.length();
+    }
+
+    /**
+     * Rendering the log message
+     * @return the log message
+     */
+    @NotNull
+    public String getMessage() {
+        return template.render(values, numbers);
+    }
+
+    /**
+     * Get the event name
+     * @return the event name
+     */
+    @NotNull
+    public String getEventName() {
+        return eventName;
+    }
+
+    /**
+     * Get the player involved into this event, if one is involved
+     * @return the player involved into this event, null if no player is involved
+     */
+    @Nullable
+    public String getPlayerName() {
+        return playerName;
+    }
+
+    /**
+     * Get the event type of this event
+     * @return the event type
+     */
+    @Nullable
+    public String getEventType() {
+        return eventType;
+    }
+
+    /**
+     * If the event was cancelled when it was captured
+     * @return true if the event was cancelled, otherwise false
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Get the time when the event was captured
+     * @return the time, in milliseconds
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Get the priority of the logged event
+     * @return the priority
+     */
+    @NotNull
+    public LogPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Get the sample rate of the logged event: this record stands for this amount of events
+     * @return the sample rate, 1 if the event is not sampled
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Get the amount of events coalesced into this record
+     * @return the amount of events, 1 if the event is not coalesced
+     */
+    public int getCoalesced() {
+        return coalesced;
+    }
+
+    /**
+     * Get the approximate memory used by this record
+     * @return the approximate size, in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+}
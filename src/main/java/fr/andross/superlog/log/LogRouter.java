@@ -0,0 +1,146 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Routing the logs to their files.
+ * The 'logs-format' is compiled once, and the resolved files are cached
+ * per player and event type (or event name) until the day changes.
+ * Only used by the log worker, except {@link #getDate(String)} which is thread safe.
+ * @version 1.2
+ * @author Andross
+ */
+public final class LogRouter {
+    private final String logsDirectory;
+    private final String playersDirectory;
+    private final LogTemplate format;
+    private final LogClock clock;
+    private final int eventSlot, typeSlot, daySlot, monthSlot, yearSlot;
+    private final Map<String, Map<String, LogSink>> sinks = new HashMap<>(); // player name (null if none) -> event type or name -> sink
+    private final Pattern datePattern; // null if the day is not in the file names
+    private long epochDay = Long.MIN_VALUE;
+
+    /**
+     * Creating a router
+     * @param dataFolder the plugin data folder
+     * @param logsFormat the log files format (e.g: {DAY}-{MONTH}-{YEAR}_{TYPE}.log)
+     * @param clock the clock
+     */
+    public LogRouter(@NotNull final File dataFolder, @NotNull final String logsFormat, @NotNull final LogClock clock) {
+        logsDirectory = dataFolder + File.separator + "logs" + File.separator;
+        playersDirectory = logsDirectory + "players" + File.separator;
+        format = new LogTemplate(logsFormat);
+        this.clock = clock;
+        eventSlot = format.getSlot("EVENT");
+        typeSlot = format.getSlot("TYPE");
+        daySlot = format.getSlot("DAY");
+        monthSlot = format.getSlot("MONTH");
+        yearSlot = format.getSlot("YEAR");
+
+        // Pattern of the file names, to read back their day
+        if (daySlot < 0 || monthSlot < 0 || yearSlot < 0) datePattern = null;
+        else {
+            final StringBuilder regex = new StringBuilder();
+            final Matcher m = Pattern.compile("\\{(.*?)\\}").matcher(logsFormat);
+            int last = 0;
+            while (m.find()) {
+                regex.append(Pattern.quote(logsFormat.substring(last, m.start())));
+                switch (m.group(1).toUpperCase()) {
+                    case "DAY": regex.append("(?<day>\\d{1,2})"); break;
+                    case "MONTH": regex.append("(?<month>\\d{1,2})"); break;
+                    case "YEAR": regex.append("(?<year>\\d{2,4})"); break;
+                    default: regex.append(".*?");
+                }
+                last = m.end();
+            }
+            regex.append(Pattern.quote(logsFormat.substring(last))).append("(\\.gz)?");
+            datePattern = Pattern.compile(regex.toString());
+        }
+    }
+
+    /**
+     * Get the day of a log file, from its name
+     * @param fileName the log file name
+     * @return the day, null if unknown
+     */
+    @Nullable
+    public LocalDate getDate(@NotNull final String fileName) {
+        if (datePattern == null) return null;
+        final Matcher m = datePattern.matcher(fileName);
+        if (!m.matches()) return null;
+        try {
+            final int year = Integer.parseInt(m.group("year"));
+            return LocalDate.of(year < 100 ? 2000 + year : year, Integer.parseInt(m.group("month")), Integer.parseInt(m.group("day")));
+        } catch (final DateTimeException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the sink of a log
+     * @param log the captured event
+     * @return the sink, reused for all logs of the same file during the day
+     */
+    @NotNull
+    public LogSink route(@NotNull final LogRecord log) {
+        // Day changed?
+        final long day = clock.getEpochDay(log.getTime());
+        if (day != epochDay) {
+            sinks.clear();
+            epochDay = day;
+        }
+
+        final String name = eventSlot >= 0 ? log.getEventName() : typeSlot >= 0 ? log.getEventType() : null;
+        final Map<String, LogSink> playerSinks = sinks.computeIfAbsent(log.getPlayerName(), k -> new HashMap<>());
+        LogSink sink = playerSinks.get(name);
+        if (sink == null) {
+            sink = new LogSink(resolve(log));
+            playerSinks.put(name, sink);
+        }
+        return sink;
+    }
+
+    /**
+     * Resolving the file of a log
+     * @param log the captured event
+     * @return the log file
+     */
+    @NotNull
+    private File resolve(@NotNull final LogRecord log) {
+        final long time = log.getTime();
+        final String[] values = new String[format.size()];
+        if (eventSlot >= 0) values[eventSlot] = log.getEventName();
+        if (typeSlot >= 0) values[typeSlot] = log.getEventType();
+        if (daySlot >= 0) values[daySlot] = clock.getDay(time);
+        if (monthSlot >= 0) values[monthSlot] = clock.getMonth(time);
+        if (yearSlot >= 0) values[yearSlot] = clock.getYear(time);
+        final String playerName = log.getPlayerName();
+        return new File(playerName != null ? playersDirectory + playerName + File.separator : logsDirectory, format.render(values, null));
+    }
+}
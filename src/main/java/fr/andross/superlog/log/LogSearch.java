@@ -0,0 +1,325 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Search of logs into log files, plain or gzipped.
+ * Files are searched in parallel on a bounded pool; each file streams its matching logs into a part file,
+ * and the parts are appended into the output file in the order of the files, so the memory used stays constant.
+ * Indexed files only read the logs of the matching events, during the time range if any.
+ * @version 1.2
+ * @author Andross
+ */
+public final class LogSearch {
+    private static final String GZIP = ".gz";
+    private final List<File> files;
+    private final Filter filter;
+    private final LogTimeWindow window;
+    private final File output;
+    private final int threads;
+    private final long totalBytes;
+    private final AtomicInteger searchedFiles = new AtomicInteger();
+    private final AtomicLong searchedBytes = new AtomicLong();
+    private final AtomicLong matches = new AtomicLong();
+    private volatile boolean cancelled = false;
+
+    /**
+     * What is searched
+     */
+    public interface Filter {
+        /**
+         * If a log line matches
+         * @param line the log line
+         * @return true if the log matches, otherwise false
+         */
+        boolean test(@NotNull String line);
+
+        /**
+         * If the logs of an event can match, used to only read the matching logs of indexed files
+         * @param eventName the event name
+         * @return true if the logs of this event can match, otherwise false
+         */
+        default boolean testEvent(@NotNull final String eventName) {
+            return true;
+        }
+    }
+
+    /**
+     * Creating a search
+     * @param files the log files to search, plain or gzipped
+     * @param filter what is searched
+     * @param window the time range searched, null for all logs
+     * @param output the file where matching logs are written
+     * @param threads maximum amount of files searched at the same time
+     */
+    public LogSearch(@NotNull final List<File> files, @NotNull final Filter filter, @Nullable final LogTimeWindow window, @NotNull final File output, final int threads) {
+        this.files = files;
+        this.filter = filter;
+        this.window = window;
+        this.output = output;
+        this.threads = Math.max(1, threads);
+        long bytes = 0;
+        for (final File f : files) bytes += f.length();
+        this.totalBytes = bytes;
+    }
+
+    /**
+     * Check if a file is a log file (plain or gzipped) of this extension
+     * @param file the file
+     * @param extension the log files extension (e.g: .log)
+     * @return true if it is a log file, otherwise false
+     */
+    public static boolean isLogFile(@NotNull final File file, @NotNull final String extension) {
+        final String name = file.getName();
+        return file.isFile() && (name.endsWith(extension) || name.endsWith(extension + GZIP));
+    }
+
+    /**
+     * Filter of the logs of an event, as the filter command
+     * Only the event name of the logs is matched, so indexed and scanned files return the same logs.
+     * @param eventName the event name searched (or a part of it), empty for all events
+     * @return the filter
+     */
+    @NotNull
+    public static Filter ofEvent(@NotNull final String eventName) {
+        return new Filter() {
+            @Override
+            public boolean test(@NotNull final String line) {
+                final String name = getEventName(line);
+                return name != null && testEvent(name);
+            }
+
+            @Override
+            public boolean testEvent(@NotNull final String name) {
+                return name.contains(eventName);
+            }
+        };
+    }
+
+    /**
+     * Get the event name of a log line ([time][Event][tags...]: message)
+     * @param line the log line
+     * @return the event name, null if the line is not a log
+     */
+    @Nullable
+    public static String getEventName(@NotNull final String line) {
+        if (!line.startsWith("[")) return null;
+        final int start = line.indexOf("][");
+        if (start < 0) return null;
+        final int end = line.indexOf(']', start + 2);
+        return end < 0 ? null : line.substring(start + 2, end);
+    }
+
+    /**
+     * Running the search, on the current thread and the search pool.
+     * The output file is deleted if nothing matches, or if the search is cancelled.
+     * @return the amount of matching logs
+     * @throws IOException if the output can not be written
+     * @throws CancellationException if the search was cancelled
+     */
+    public long run() throws IOException {
+        final File directory = output.getParentFile();
+        if (directory != null && !directory.exists()) directory.mkdirs();
+        final File parts = Files.createTempDirectory(directory == null ? new File(".").toPath() : directory.toPath(), ".search").toFile();
+        final ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, files.size())), r -> {
+            final Thread t = new Thread(r, "SuperLog Search");
+            t.setDaemon(true);
+            return t;
+        });
+
+        try {
+            // Searching each file into its own part
+            final List<Future<File>> results = new ArrayList<>();
+            for (int i = 0; i < files.size(); i++) {
+                final File file = files.get(i);
+                final File part = new File(parts, i + ".part");
+                results.add(pool.submit(() -> search(file, part)));
+            }
+
+            // Appending the parts, in the order of the files
+            try (final OutputStream out = new BufferedOutputStream(new FileOutputStream(output, false))) {
+                for (final Future<File> result : results) {
+                    final File part;
+                    try {
+                        part = result.get();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new CancellationException();
+                    } catch (final ExecutionException e) {
+                        if (e.getCause() instanceof CancellationException) throw (CancellationException) e.getCause();
+                        throw new IOException(e.getCause());
+                    }
+                    if (part == null) continue;
+                    Files.copy(part.toPath(), out);
+                    part.delete();
+                }
+            }
+        } catch (final IOException | RuntimeException e) {
+            cancelled = true;
+            output.delete();
+            throw e;
+        } finally {
+            pool.shutdownNow();
+            final File[] remaining = parts.listFiles();
+            if (remaining != null) for (final File f : remaining) f.delete();
+            parts.delete();
+        }
+
+        if (matches.get() == 0) output.delete();
+        return matches.get();
+    }
+
+    /**
+     * Searching a log file
+     * @param file the log file
+     * @param part the part file, where the matching logs are written
+     * @return the part file, null if nothing matched
+     * @throws IOException if the part can not be written
+     */
+    private File search(@NotNull final File file, @NotNull final File part) throws IOException {
+        if (cancelled) throw new CancellationException();
+        final long[] found = { 0 };
+        try (final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(part), StandardCharsets.UTF_8))) {
+            read(file, filter, window, line -> {
+                if (cancelled) throw new CancellationException();
+                writer.append(line).append(System.lineSeparator());
+                found[0]++;
+            });
+        } finally {
+            searchedFiles.incrementAndGet();
+            searchedBytes.addAndGet(file.length());
+        }
+
+        matches.addAndGet(found[0]);
+        if (found[0] > 0) return part;
+        part.delete();
+        return null;
+    }
+
+    /**
+     * Reading the matching logs of a log file, plain or gzipped
+     * @param file the log file
+     * @param filter what is searched
+     * @param window the time range searched, null for all logs
+     * @param consumer the consumer of the matching logs
+     * @throws IOException if the file can not be read
+     */
+    static void read(@NotNull final File file, @NotNull final Filter filter, @Nullable final LogTimeWindow window, @NotNull final LogIndex.LineConsumer consumer) throws IOException {
+        // Not the day searched?
+        if (window != null && !window.testFile(file)) return;
+
+        // Indexed logs are already in the time range, scanned logs are checked with their log time
+        final LogIndex.LineConsumer indexed = line -> {
+            if (filter.test(line)) consumer.accept(line);
+        };
+        final LocalDate date = window == null ? null : window.getDate(file);
+        final LogIndex.LineConsumer scanned = window == null ? indexed : line -> {
+            if (window.testLine(line, date)) indexed.accept(line);
+        };
+
+        try {
+            if (file.getName().endsWith(GZIP)) {
+                try (final BufferedReader br = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(file), 65536), StandardCharsets.UTF_8))) {
+                    for (String line; (line = br.readLine()) != null;) scanned.accept(line);
+                }
+                return;
+            }
+
+            // Plain file: seeking the indexed logs of the matching events, scanning the rest
+            final LogIndex index = LogIndex.load(file);
+            if (index == null) {
+                LogIndex.scan(file, 0, Long.MAX_VALUE, scanned);
+                return;
+            }
+            final long[] offsets = window == null ? index.getOffsets(filter::testEvent) : index.getOffsets(filter::testEvent, window.getFrom(), window.getTo());
+            int from = 0;
+            for (final long[] range : index.getUncovered(file.length())) {
+                int to = from;
+                while (to < offsets.length && offsets[to] < range[0]) to++;
+                LogIndex.readLines(file, Arrays.copyOfRange(offsets, from, to), indexed);
+                from = to;
+                LogIndex.scan(file, range[0], range[1], scanned);
+            }
+            LogIndex.readLines(file, Arrays.copyOfRange(offsets, from, offsets.length), indexed);
+        } catch (final FileNotFoundException | EOFException e) {
+            // Log file deleted or gzipped meanwhile, or gzip still being written
+        }
+    }
+
+    /**
+     * Cancelling the search
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * If the search was cancelled
+     * @return true if cancelled, otherwise false
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Get the amount of files to search
+     * @return the amount of files
+     */
+    public int getFiles() {
+        return files.size();
+    }
+
+    /**
+     * Get the amount of files already searched
+     * @return the amount of files searched
+     */
+    public int getSearchedFiles() {
+        return searchedFiles.get();
+    }
+
+    /**
+     * Get the progress of the search
+     * @return the progress, between 0 and 1
+     */
+    public double getProgress() {
+        return totalBytes == 0 ? 1 : Math.min(1, searchedBytes.get() / (double) totalBytes);
+    }
+
+    /**
+     * Get the amount of matching logs found until now
+     * @return the amount of matching logs
+     */
+    public long getMatches() {
+        return matches.get();
+    }
+}
@@ -28,6 +28,7 @@ import org.bukkit.block.Block;
 import org.bukkit.command.CommandSender;
 import org.bukkit.enchantments.Enchantment;
 import org.bukkit.entity.*;
+import org.bukkit.event.Cancellable;
 import org.bukkit.event.Event;
 import org.bukkit.event.entity.EntityDamageEvent;
 import org.bukkit.event.inventory.InventoryType;
@@ -39,11 +40,11 @@ import org.bukkit.plugin.Plugin;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.lang.reflect.Field;
 import java.net.InetSocketAddress;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 /**
@@ -55,49 +56,90 @@ public final class LogSerializer {
     private final SuperLog pl;
     private final LoggedEvent loggedEvent;
     private final Event event;
-    private String message;
+    private final LogTemplate template;
+    private final String[] values;
+    private long[] numbers = null;
     private String playerName = null;
     private String eventType = null;
+    private int coalesced = 1;
+    private int sampleRate;
 
     protected LogSerializer(@NotNull final SuperLog pl, @NotNull final LoggedEvent loggedEvent, @NotNull final Event event) {
         this.pl = pl;
         this.loggedEvent = loggedEvent;
         this.event = event;
-        message = loggedEvent.getMessage();
+        template = loggedEvent.getTemplate();
+        values = new String[template.size()];
+        sampleRate = loggedEvent.getSampleRate();
     }
 
     /**
-     * Quick utility to quickly args into the message
-     * @param arg argument
+     * Quick utility to fill a placeholder of the message.
+     * The first value set for a placeholder is kept.
+     * @param key placeholder key, uppercased and without braces (e.g: BLOCK.NAME)
      * @param value value
      */
-    private void replace(@NotNull final String arg, @Nullable final String value) {
-        message = message.replace(arg, value == null ? "Unknown" : value);
+    private void replace(@NotNull final String key, @Nullable final String value) {
+        fill(template.getSlot(key), value);
     }
 
     /**
-     * Checking if this event should not be logged
-     * @param condition condition to check
-     * @param fieldName field to check
-     * @return true if this event should not be logged, otherwise false
+     * Quick utility to fill a slot of the message.
+     * The first value set for a slot is kept.
+     * @param slot slot index, ignored if negative
+     * @param value value
      */
-    protected boolean isAnIgnoredEvent(@Nullable String condition, @Nullable String fieldName) {
-        if (condition == null) return false;
-        condition = condition.toUpperCase();
-        if (fieldName != null) fieldName = fieldName.toUpperCase();
-        boolean isIgnored = false;
+    private void fill(final int slot, @Nullable final String value) {
+        if (slot >= 0 && values[slot] == null) values[slot] = value == null ? "Unknown" : value;
+    }
 
-        // Checking ignored type
-        final List<String> ignored = loggedEvent.getConditions((fieldName == null ? "IGNORED" : fieldName + "-IGNORED"));
-        if (ignored != null) isIgnored = ignored.stream().anyMatch(condition::equalsIgnoreCase);
+    /**
+     * Quick utility to fill a slot of the message with a number,
+     * which is only converted to text when the message is rendered.
+     * The first value set for a slot is kept.
+     * @param slot slot index, ignored if negative
+     * @param value value
+     */
+    private void fill(final int slot, final long value) {
+        if (slot < 0 || values[slot] != null) return;
+        if (numbers == null) numbers = new long[values.length];
+        numbers[slot] = value;
+        values[slot] = LogTemplate.NUMBER;
+    }
 
-        // Checking logged type
-        if (!isIgnored) {
-            final List<String> logged = loggedEvent.getConditions((fieldName == null ? "LOGGED" : fieldName + "-LOGGED"));
-            if (logged != null) isIgnored = logged.stream().noneMatch(condition::equalsIgnoreCase);
-        }
+    /**
+     * Quick utility to fill a slot of the message with a decimal number,
+     * which is only converted to text when the message is rendered.
+     * The first value set for a slot is kept.
+     * @param slot slot index, ignored if negative
+     * @param value value
+     */
+    private void fill(final int slot, final double value) {
+        if (slot < 0 || values[slot] != null) return;
+        if (numbers == null) numbers = new long[values.length];
+        numbers[slot] = Double.doubleToRawLongBits(value);
+        values[slot] = LogTemplate.DECIMAL;
+    }
 
-        return isIgnored;
+    /**
+     * Checking if this event should not be logged
+     * @param value value to check against the event conditions
+     * @return true if this event should not be logged, otherwise false
+     */
+    protected boolean isAnIgnoredEvent(@Nullable final String value) {
+        final LogCondition condition = loggedEvent.getCondition();
+        return condition != null && condition.isIgnored(value);
+    }
+
+    /**
+     * Checking if this event should not be logged
+     * @param value value to check against the field conditions
+     * @param field field to check
+     * @return true if this event should not be logged, otherwise false
+     */
+    protected boolean isAnIgnoredEvent(@Nullable final String value, @NotNull final LogField field) {
+        final LogCondition condition = field.getCondition();
+        return condition != null && condition.isIgnored(value);
     }
 
     /**
@@ -107,98 +149,147 @@ public final class LogSerializer {
      */
     @SuppressWarnings("unchecked")
     protected boolean serializeFields(@NotNull final Event e) {
-        final Field[] fields = loggedEvent.getFields();
+        final LogField[] fields = loggedEvent.getFields();
         if (fields == null) return false;
 
-        for (final Field f : fields) {
-            Object o;
-            try {
-                o = f.get(e);
-            } catch (final Exception ex) {
-                // Should not happen, as its checked on loading
-                pl.getLogger().info("Unknown field '" + f.getName() + "' for event '" + e.getEventName() + "'.");
+        for (final LogField f : fields) {
+            // Primitive fields
+            final LogField.Kind fixedKind = f.getKind();
+            if (fixedKind == LogField.Kind.UNSUPPORTED) continue;
+            if (fixedKind == LogField.Kind.INT) {
+                if (f.getSlot() >= 0) fill(f.getSlot(), f.getInt(e));
+                continue;
+            }
+            if (fixedKind == LogField.Kind.LONG) {
+                if (f.getSlot() >= 0) fill(f.getSlot(), f.getLong(e));
                 continue;
             }
+            if (fixedKind == LogField.Kind.BOOLEAN) {
+                if (f.getSlot() >= 0) fill(f.getSlot(), String.valueOf(f.getBoolean(e)));
+                continue;
+            }
+
+            // Object fields
+            final Object o = f.get(e);
             if (o == null) continue;
 
-            final String fieldName = f.getName().toUpperCase();
-            if (o instanceof String) {
-                if (isAnIgnoredEvent((String) o, fieldName)) return true;
-                replace("{" + fieldName + "}", (String) o);
-            } else if (o instanceof Integer || o instanceof Boolean || o instanceof Long) replace("{" + fieldName + "}", String.valueOf(o));
-            else if (o instanceof Advancement) replace("{" + fieldName + "}", ((Advancement) o).getKey().getKey());
-            else if (o instanceof AnimalTamer) replace("{" + fieldName + "}", ((AnimalTamer) o).getName());
-            else if (o instanceof ItemStack || o instanceof Item) {
-                final ItemStack item;
-                if (o instanceof ItemStack) item = (ItemStack) o; else item = ((Item) o).getItemStack();
-                if (isAnIgnoredEvent(item.getType().name(), fieldName)) return true;
-                replace("{" + fieldName + ".NAME}", item.getType().name());
-                replace("{" + fieldName + ".AMOUNT}", String.valueOf(item.getAmount()));
-            } else if (o instanceof Material) {
-                final String materialName = ((Material) o).name();
-                if (isAnIgnoredEvent(materialName, fieldName)) return true;
-                replace("{" + fieldName + "}", materialName);
-            } else if (o instanceof World) {
-                final String worldName = ((World) o).getName();
-                if (isAnIgnoredEvent(worldName, fieldName)) return true;
-                replace("{" + fieldName + "}", worldName);
-            } else if (o instanceof Block) {
-                final Block b = (Block) o;
-                if (isAnIgnoredEvent(b.getType().name(), fieldName)) return true;
-                serialize(b, fieldName);
-            } else if (o instanceof Location) {
-                final Location location = (Location) o;
-                replace("{" + fieldName + ".LOCWORLD}", location.getWorld() == null ? null : location.getWorld().getName());
-                replace("{" + fieldName + ".LOCX}", String.valueOf(location.getBlockX()));
-                replace("{" + fieldName + ".LOCY}", String.valueOf(location.getBlockY()));
-                replace("{" + fieldName + ".LOCZ}", String.valueOf(location.getBlockZ()));
-            } else if (o instanceof Entity) {
-                final Entity entity = (Entity) o;
-                if (isAnIgnoredEvent(entity.getType().name(), fieldName)) return true;
-                serialize(entity, fieldName);
-            } else if (o instanceof Inventory) replace("{" + fieldName + ".TYPE}", ((Inventory) o).getType().name());
-            else if (o instanceof CommandSender) replace("{" + fieldName + ".NAME}", ((CommandSender) o).getName());
-            else if (o instanceof List) {
-                try {
-                    final List<Object> list = (List<Object>) o;
-                    if (!list.isEmpty()) {
-                        if (list.get(0) instanceof ItemStack) { // List of ItemStack
-                            final List<ItemStack> itemList = (List<ItemStack>) o;
-                            final Set<String> itemNames = new HashSet<>();
-                            itemList.forEach(i -> itemNames.add(i.getType().name()));
-                            replace("{" + fieldName + "}", String.join(",", itemNames));
-                        } else {
-                            replace("{" + fieldName + "}", String.join(",", ((List<String>) o))); // List of String
+            final String fieldName = f.getName();
+            switch (f.getKind(o)) {
+                case STRING:
+                    if (isAnIgnoredEvent((String) o, f)) return true;
+                    fill(f.getSlot(), (String) o);
+                    break;
+                case NUMBER:
+                    if (o instanceof Boolean) fill(f.getSlot(), String.valueOf(o));
+                    else fill(f.getSlot(), ((Number) o).longValue());
+                    break;
+                case ADVANCEMENT: fill(f.getSlot(), ((Advancement) o).getKey().getKey()); break;
+                case ANIMAL_TAMER: fill(f.getSlot(), ((AnimalTamer) o).getName()); break;
+                case ITEM_STACK:
+                case ITEM: {
+                    final ItemStack item = o instanceof ItemStack ? (ItemStack) o : ((Item) o).getItemStack();
+                    if (isAnIgnoredEvent(item.getType().name(), f)) return true;
+                    fill(f.getSlotName(), item.getType().name());
+                    fill(f.getSlotAmount(), item.getAmount());
+                    break;
+                }
+                case MATERIAL: {
+                    final String materialName = ((Material) o).name();
+                    if (isAnIgnoredEvent(materialName, f)) return true;
+                    fill(f.getSlot(), materialName);
+                    break;
+                }
+                case WORLD: {
+                    final String worldName = ((World) o).getName();
+                    if (isAnIgnoredEvent(worldName, f)) return true;
+                    fill(f.getSlot(), worldName);
+                    break;
+                }
+                case BLOCK: {
+                    final Block b = (Block) o;
+                    if (isAnIgnoredEvent(b.getType().name(), f)) return true;
+                    serialize(b, fieldName);
+                    break;
+                }
+                case LOCATION: {
+                    final Location location = (Location) o;
+                    fill(f.getSlotLocWorld(), location.getWorld() == null ? null : location.getWorld().getName());
+                    fill(f.getSlotLocX(), location.getBlockX());
+                    fill(f.getSlotLocY(), location.getBlockY());
+                    fill(f.getSlotLocZ(), location.getBlockZ());
+                    break;
+                }
+                case ENTITY: {
+                    final Entity entity = (Entity) o;
+                    if (isAnIgnoredEvent(entity.getType().name(), f)) return true;
+                    serialize(entity, fieldName);
+                    break;
+                }
+                case INVENTORY: fill(f.getSlotType(), ((Inventory) o).getType().name()); break;
+                case COMMAND_SENDER: fill(f.getSlotName(), ((CommandSender) o).getName()); break;
+                case LIST:
+                    if (f.getSlot() < 0) break;
+                    try {
+                        final List<Object> list = (List<Object>) o;
+                        if (!list.isEmpty()) {
+                            if (list.get(0) instanceof ItemStack) { // List of ItemStack
+                                final List<ItemStack> itemList = (List<ItemStack>) o;
+                                final Set<String> itemNames = new HashSet<>();
+                                itemList.forEach(i -> itemNames.add(i.getType().name()));
+                                fill(f.getSlot(), String.join(",", itemNames));
+                            } else {
+                                fill(f.getSlot(), String.join(",", ((List<String>) o))); // List of String
+                            }
                         }
+                    } catch (final Exception ex) {
+                        pl.getLogger().info("Unsupported list '" + fieldName + "' for '" + e.getEventName() + "'.");
                     }
-                } catch (final Exception ex) {
-                    pl.getLogger().info("Unsupported list '" + fieldName + "' for '" + e.getEventName() + "'.");
-                }
-            } else if (o instanceof Map) {
-                try {
-                    final Map<Enchantment, Integer> enchants = (Map<Enchantment, Integer>) o;
-                    final StringBuilder message = new StringBuilder();
-                    for (Map.Entry<Enchantment, Integer> map : enchants.entrySet()) {
-                        message.append("[Enchantement: ");
-                        message.append(map.getKey().getKey());
-                        message.append("; Level: ");
-                        message.append(map.getValue());
-                        message.append("]");
+                    break;
+                case MAP:
+                    if (f.getSlot() < 0) break;
+                    try {
+                        final Map<Enchantment, Integer> enchants = (Map<Enchantment, Integer>) o;
+                        final StringBuilder message = new StringBuilder();
+                        for (Map.Entry<Enchantment, Integer> map : enchants.entrySet()) {
+                            message.append("[Enchantement: ");
+                            message.append(map.getKey().getKey());
+                            message.append("; Level: ");
+                            message.append(map.getValue());
+                            message.append("]");
+                        }
+                        fill(f.getSlot(), message.toString());
+                    } catch (final Exception ex) {
+                        pl.getLogger().info("Invalid map for '" + e.getEventName() + "'. Only Map<Enchantement, Integer> is supported.");
                     }
-                    replace("{" + fieldName + "}", message.toString());
-                } catch (final Exception ex) {
-                    pl.getLogger().info("Invalid map for '" + e.getEventName() + "'. Only Map<Enchantement, Integer> is supported.");
+                    break;
+                case MERCHANT_RECIPE: fill(f.getSlot(), ((MerchantRecipe) o).getResult().getType().name()); break;
+                case ENUM: {
+                    final String enums = String.valueOf(o);
+                    if (isAnIgnoredEvent(enums, f)) return true;
+                    fill(f.getSlot(), enums);
+                    break;
                 }
-            } else if (o instanceof MerchantRecipe) replace("{" + fieldName + "}", ((MerchantRecipe) o).getResult().getType().name());
-            else if (o instanceof Enum) {
-                final String enums = String.valueOf(o);
-                if (isAnIgnoredEvent(enums, fieldName)) return true;
-                replace("{" + fieldName + "}", enums);
+                default: break;
             }
         }
         return false;
     }
 
+    /**
+     * Serializing coalesced events: the 'from' location becomes the start of the window
+     * @param window the coalesced window
+     * @param tick the current tick
+     */
+    protected void serialize(@NotNull final LogCoalescer.Window window, final long tick) {
+        coalesced = window.getCount();
+        replace("COALESCED.COUNT", Integer.toString(coalesced));
+        replace("COALESCED.TICKS", Long.toString(window.getTicks(tick)));
+        replace("FROM.LOCWORLD", window.getWorld() == null ? null : window.getWorld().getName());
+        fill(template.getSlot("FROM.LOCX"), window.getBlockX());
+        fill(template.getSlot("FROM.LOCY"), window.getBlockY());
+        fill(template.getSlot("FROM.LOCZ"), window.getBlockZ());
+    }
+
     /**
      * Serializing a block
      * @param b block
@@ -206,22 +297,21 @@ public final class LogSerializer {
      */
     @SuppressWarnings("deprecation")
     protected void serialize(@NotNull final Block b, @Nullable final String fieldName) {
-        final List<String> args = loggedEvent.getConditions("ARGS");
-        if (args == null) return;
-
         // Serializing a Block
-        final Location loc = b.getLocation();
-        for (final String arg : args) {
+        Location loc = null;
+        for (int slot = 0; slot < template.size(); slot++) {
+            if (!Objects.equals(template.getPrefix(slot), fieldName)) continue;
+            if (loc == null) loc = b.getLocation();
             final String value;
-            switch (arg) {
-                case "NAME": value = pl.getLogConfig().isBukkitNewApi() ? b.getBlockData().getAsString() : b.getType().name() + ":" + b.getData(); break;
+            switch (template.getArg(slot)) {
+                case "NAME": value = pl.getLogConfig().getSettings().isBukkitNewApi() ? b.getBlockData().getAsString() : b.getType().name() + ":" + b.getData(); break;
                 case "LOCWORLD": value = loc.getWorld() == null ? "Unknown" : loc.getWorld().getName(); break;
-                case "LOCX": value = String.valueOf(loc.getBlockX()); break;
-                case "LOCY": value = String.valueOf(loc.getBlockY()); break;
-                case "LOCZ": value = String.valueOf(loc.getBlockZ()); break;
+                case "LOCX": fill(slot, loc.getBlockX()); continue;
+                case "LOCY": fill(slot, loc.getBlockY()); continue;
+                case "LOCZ": fill(slot, loc.getBlockZ()); continue;
                 default: continue;
             }
-            replace("{" + (fieldName == null ? "" : fieldName + ".") + arg + "}", value);
+            fill(slot, value);
         }
     }
 
@@ -231,19 +321,17 @@ public final class LogSerializer {
      * @param fieldName field name
      */
     protected void serialize(@NotNull final Entity e, @Nullable final String fieldName) {
-        final List<String> args = loggedEvent.getConditions("ARGS");
-        if (args == null) return;
-
         // Serializing an Entity
-        for (final String arg : args) {
+        for (int slot = 0; slot < template.size(); slot++) {
+            if (!Objects.equals(template.getPrefix(slot), fieldName)) continue;
             String value = null;
-            switch (arg) {
+            switch (template.getArg(slot)) {
                 case "NAME": value = e.getName(); break;
                 case "TYPE": value = e.getType().name(); break;
                 case "HEALTH":
                     if (!(e instanceof LivingEntity)) break;
-                    value = String.valueOf(((LivingEntity) e).getHealth());
-                    break;
+                    fill(slot, ((LivingEntity) e).getHealth());
+                    continue;
                 case "IP":
                     if (!(e instanceof Player)) break;
                     final Player p = ((Player) e);
@@ -255,14 +343,14 @@ public final class LogSerializer {
                     value = e.getWorld().getName();
                     break;
                 case "LOCX":
-                    value = String.valueOf(e.getLocation().getBlockX());
-                    break;
+                    fill(slot, e.getLocation().getBlockX());
+                    continue;
                 case "LOCY":
-                    value = String.valueOf(e.getLocation().getBlockY());
-                    break;
+                    fill(slot, e.getLocation().getBlockY());
+                    continue;
                 case "LOCZ":
-                    value = String.valueOf(e.getLocation().getBlockZ());
-                    break;
+                    fill(slot, e.getLocation().getBlockZ());
+                    continue;
                 case "LASTDEATHCAUSE":
                     final EntityDamageEvent event = e.getLastDamageCause();
                     if (event == null) value = "Unknown";
@@ -276,7 +364,7 @@ public final class LogSerializer {
                     break;
                 default: continue;
             }
-            replace("{" + (fieldName == null ? "" : fieldName + ".") + arg + "}", value);
+            fill(slot, value);
         }
     }
 
@@ -286,16 +374,14 @@ public final class LogSerializer {
      * @param playerLocation location of the player (for MC<1.13)
      */
     protected void serialize(@NotNull final InventoryView iv, @NotNull final Location playerLocation) {
-        final List<String> args = loggedEvent.getConditions("ARGS");
-        if (args == null) return;
-
         // Serializing an Inventory
         final Location loc;
-        if (pl.getLogConfig().isBukkitNewApi()) loc = iv.getTopInventory().getLocation();
+        if (pl.getLogConfig().getSettings().isBukkitNewApi()) loc = iv.getTopInventory().getLocation();
         else loc = playerLocation.clone();
-        for (final String arg : args) {
+        for (int slot = 0; slot < template.size(); slot++) {
+            if (template.getPrefix(slot) != null) continue;
             String value = null;
-            switch (arg) {
+            switch (template.getArg(slot)) {
                 case "NAME": value = iv.getTitle(); break;
                 case "TYPE": value = (iv.getType() == InventoryType.CRAFTING ? "INVENTORY" : iv.getType().name()); break;
                 case "LOCWORLD": if(loc != null && loc.getWorld() != null) value = loc.getWorld().getName(); break;
@@ -318,7 +404,7 @@ public final class LogSerializer {
                     break;
                 default: continue;
             }
-            replace("{" + arg + "}", value);
+            fill(slot, value);
         }
     }
 
@@ -327,19 +413,17 @@ public final class LogSerializer {
      * @param plugin plugin
      */
     protected void serialize(@NotNull final Plugin plugin) {
-        final List<String> args = loggedEvent.getConditions("ARGS");
-        if (args == null) return;
-
-        for (final String arg : args) {
+        for (int slot = 0; slot < template.size(); slot++) {
+            if (template.getPrefix(slot) != null) continue;
             final String value;
-            switch(arg) {
+            switch (template.getArg(slot)) {
                 case "NAME": value = plugin.getName(); break;
                 case "DESCRIPTION": value = plugin.getDescription().getDescription(); break;
                 case "AUTHOR": value = String.join(",", plugin.getDescription().getAuthors()); break;
                 case "VERSION": value = plugin.getDescription().getVersion(); break;
                 default: continue;
             }
-            replace("{" + arg + "}", value);
+            fill(slot, value);
         }
     }
 
@@ -347,26 +431,24 @@ public final class LogSerializer {
      * Serializing a weather/world event
      */
     protected void serialize(@NotNull final World world) {
-        final List<String> args = loggedEvent.getConditions("ARGS");
-        if (args != null && args.contains("WORLD")) replace("{WORLD}", world.getName());
+        replace("WORLD", world.getName());
     }
 
     /**
      * Serializing a chunk event
      */
     protected void serialize(@NotNull final Chunk c) {
-        final List<String> args = loggedEvent.getConditions("ARGS");
-        if (args == null) return;
-        for (final String arg : args) {
+        for (int slot = 0; slot < template.size(); slot++) {
+            if (template.getPrefix(slot) != null) continue;
             final String value;
-            switch (arg) {
+            switch (template.getArg(slot)) {
                 case "LOCWORLD": value = c.getWorld().getName(); break;
-                case "LOCX": value = String.valueOf(c.getX()); break;
-                case "LOCZ": value = String.valueOf(c.getZ()); break;
+                case "LOCX": fill(slot, c.getX()); continue;
+                case "LOCZ": fill(slot, c.getZ()); continue;
                 case "SLIME": value = String.valueOf(c.isSlimeChunk()); break;
                 default: continue;
             }
-            replace("{" + arg + "}", value);
+            fill(slot, value);
         }
     }
 
@@ -380,12 +462,14 @@ public final class LogSerializer {
     }
 
     /**
-     * Get the log message
-     * @return the log message
+     * Capturing the serialized event into an immutable record,
+     * which can be rendered on another thread
+     * @return the captured record
      */
     @NotNull
-    public String getMessage() {
-        return message;
+    public LogRecord capture() {
+        final boolean cancelled = event instanceof Cancellable && ((Cancellable) event).isCancelled();
+        return new LogRecord(template, values, numbers, event.getEventName(), playerName, eventType, cancelled, System.currentTimeMillis(), loggedEvent.getPriority(), sampleRate, coalesced);
     }
 
     /**
@@ -421,4 +505,12 @@ public final class LogSerializer {
     public void setEventType(@NotNull final String eventType) {
         this.eventType = eventType;
     }
+
+    /**
+     * Set the sample rate of this event, if it was sampled with another rate than configured
+     * @param sampleRate the sample rate
+     */
+    public void setSampleRate(final int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
 }
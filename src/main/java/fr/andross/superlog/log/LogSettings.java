@@ -0,0 +1,168 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An immutable snapshot of the validated config, used by the logging path.
+ * A new snapshot is created on each (re)load.
+ * @version 1.2
+ * @author Andross
+ */
+public final class LogSettings {
+    private final int saveDelay;
+    private final LogClock clock;
+    private final LogTemplate liveFormat;
+    private final int liveTimeSlot, liveEventSlot, liveLogSlot;
+    private final Set<String> alertCommands;
+    private final String alertMessage;
+    private final String prefix;
+    private final String logsSavedMessage;
+    private final boolean logsInConsole;
+    private final boolean logsInGame;
+    private final boolean citizensEnabled;
+    private final boolean bukkitNewApi;
+
+    LogSettings(final int saveDelay, @NotNull final LogClock clock, @NotNull final String liveFormat,
+                @NotNull final Set<String> alertCommands, @Nullable final String alertMessage,
+                @NotNull final String prefix, @Nullable final String logsSavedMessage,
+                final boolean logsInConsole, final boolean logsInGame,
+                final boolean citizensEnabled, final boolean bukkitNewApi) {
+        this.saveDelay = saveDelay;
+        this.clock = clock;
+        this.liveFormat = new LogTemplate(liveFormat);
+        liveTimeSlot = this.liveFormat.getSlot("TIME");
+        liveEventSlot = this.liveFormat.getSlot("EVENT");
+        liveLogSlot = this.liveFormat.getSlot("LOG");
+        this.alertCommands = Collections.unmodifiableSet(new HashSet<>(alertCommands));
+        this.alertMessage = alertMessage;
+        this.prefix = prefix;
+        this.logsSavedMessage = logsSavedMessage;
+        this.logsInConsole = logsInConsole;
+        this.logsInGame = logsInGame;
+        this.citizensEnabled = citizensEnabled;
+        this.bukkitNewApi = bukkitNewApi;
+    }
+
+    /**
+     * Time between saving logs
+     * @return the save delay, in seconds, 0 if logs are saved instantly
+     */
+    public int getSaveDelay() {
+        return saveDelay;
+    }
+
+    /**
+     * Get the clock formatting the log times, using the date format entered in the config
+     * @return the clock
+     */
+    @NotNull
+    public LogClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Rendering a live log message, not colored yet
+     * @param time the formatted time
+     * @param eventName the event name
+     * @param log the log message
+     * @return the live log message
+     */
+    @NotNull
+    public String getLiveMessage(@NotNull final String time, @NotNull final String eventName, @NotNull final String log) {
+        final String[] values = new String[liveFormat.size()];
+        if (liveTimeSlot >= 0) values[liveTimeSlot] = time;
+        if (liveEventSlot >= 0) values[liveEventSlot] = eventName;
+        if (liveLogSlot >= 0) values[liveLogSlot] = log;
+        return liveFormat.render(values, null);
+    }
+
+    /**
+     * Get the set of commands that should be alerted when used
+     * @return set of commands that should be alerted
+     */
+    @NotNull
+    public Set<String> getAlertCommands() {
+        return alertCommands;
+    }
+
+    /**
+     * Get the alert message of commands, not colored yet
+     * @return the alert message, null if not set
+     */
+    @Nullable
+    public String getAlertMessage() {
+        return alertMessage;
+    }
+
+    /**
+     * Get the colored messages prefix
+     * @return the prefix
+     */
+    @NotNull
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Get the colored message sent when logs are saved
+     * @return the message, null if not set
+     */
+    @Nullable
+    public String getLogsSavedMessage() {
+        return logsSavedMessage;
+    }
+
+    /**
+     * If the plugin should displays in console when logs are saved
+     * @return true if displayed in console, otherwise false
+     */
+    public boolean isLogsInConsole() {
+        return logsInConsole;
+    }
+
+    /**
+     * If the plugin should displays in game when logs are saved
+     * @return true if displayed in game, otherwise false
+     */
+    public boolean isLogsInGame() {
+        return logsInGame;
+    }
+
+    /**
+     * If Citizens is enabled on this instance
+     * @return true if Citizens is running, otherwise false
+     */
+    public boolean isCitizensEnabled() {
+        return citizensEnabled;
+    }
+
+    /**
+     * If we are running on the new api-version 1.13+ version
+     * @return true if MC>=1.13, otherwise false
+     */
+    public boolean isBukkitNewApi() {
+        return bukkitNewApi;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A resolved log file, and its logs waiting to be saved.
+ * Only used by the log worker.
+ * @version 1.2
+ * @author Andross
+ */
+public final class LogSink {
+    private final File file;
+    private final List<String> lines = new ArrayList<>();
+    private final List<String> events = new ArrayList<>();
+    private long[] times = new long[16];
+
+    LogSink(@NotNull final File file) {
+        this.file = file;
+    }
+
+    /**
+     * Get the log file
+     * @return the log file
+     */
+    @NotNull
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Adding a log waiting to be saved into this file
+     * @param line the rendered log line
+     * @param eventName the event name
+     * @param time the time of the event, in milliseconds
+     */
+    void add(@NotNull final String line, @NotNull final String eventName, final long time) {
+        if (lines.size() == times.length) times = Arrays.copyOf(times, times.length * 2);
+        times[lines.size()] = time;
+        lines.add(line);
+        events.add(eventName);
+    }
+
+    /**
+     * Clearing the waiting logs, once saved
+     */
+    void clear() {
+        lines.clear();
+        events.clear();
+    }
+
+    /**
+     * Get the logs waiting to be saved into this file
+     * @return the waiting logs
+     */
+    @NotNull
+    List<String> getLines() {
+        return lines;
+    }
+
+    /**
+     * Get the event names of the waiting logs
+     * @return the event names, in the same order as the logs
+     */
+    @NotNull
+    List<String> getEvents() {
+        return events;
+    }
+
+    /**
+     * Get the time of a waiting log
+     * @param index the log index
+     * @return the time of the event, in milliseconds
+     */
+    long getTime(final int index) {
+        return times[index];
+    }
+}
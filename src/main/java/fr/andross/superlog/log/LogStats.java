@@ -0,0 +1,197 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Time spent in each stage of the logging pipeline, per tick
+ * @version 1.2
+ * @author Andross
+ */
+public final class LogStats {
+    private static final int TICKS = 20;
+    private static final int[] BATCH_BOUNDS = { 1, 10, 100, 1000 };
+    private final LongAdder captureNanos = new LongAdder();
+    private final LongAdder renderNanos = new LongAdder();
+    private final long[] captureTicks = new long[TICKS];
+    private final long[] renderTicks = new long[TICKS];
+    private int tick = 0;
+    private volatile long ticks = 0;
+    private final LongAdder[] flushes = newAdders(FlushReason.values().length);
+    private final LongAdder[] batches = newAdders(BATCH_BOUNDS.length + 1);
+    private final LongAdder flushedLines = new LongAdder();
+    private final LongAdder flushedFiles = new LongAdder();
+    private final LongAccumulator largestBatch = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Why cached logs were written into their files
+     */
+    public enum FlushReason {
+        /** Too many cached bytes **/
+        BYTES,
+        /** Too many cached lines **/
+        LINES,
+        /** Oldest cached log waited too long **/
+        LATENCY,
+        /** Memory budget reached **/
+        MEMORY,
+        /** Logs saved instantly (save-delay: 0) **/
+        INSTANT,
+        /** Logs saved by the save-delay timer, or by a command **/
+        SAVE,
+        /** Plugin disabled or reloaded **/
+        SHUTDOWN
+    }
+
+    /**
+     * Adding time spent capturing an event, on the event thread
+     * @param nanos time spent, in nanoseconds
+     */
+    public void addCapture(final long nanos) {
+        captureNanos.add(nanos);
+    }
+
+    /**
+     * Adding time spent rendering and routing a record, on the log worker
+     * @param nanos time spent, in nanoseconds
+     */
+    public void addRender(final long nanos) {
+        renderNanos.add(nanos);
+    }
+
+    /**
+     * Adding a flush of the cached logs
+     * @param reason why the logs were written
+     * @param files amount of files written, one batched append each
+     * @param lines amount of lines written
+     */
+    public void addFlush(@NotNull final FlushReason reason, final int files, final int lines) {
+        flushes[reason.ordinal()].increment();
+        flushedFiles.add(files);
+        flushedLines.add(lines);
+        largestBatch.accumulate(lines);
+        int bucket = 0;
+        while (bucket < BATCH_BOUNDS.length && lines > BATCH_BOUNDS[bucket]) bucket++;
+        batches[bucket].increment();
+    }
+
+    /**
+     * Closing the current tick.
+     * Should be called every tick, on the main thread.
+     */
+    public void tick() {
+        captureTicks[tick] = captureNanos.sumThenReset();
+        renderTicks[tick] = renderNanos.sumThenReset();
+        tick = (tick + 1) % TICKS;
+        ticks++;
+    }
+
+    /**
+     * Get the amount of ticks since the plugin was loaded
+     * @return the current tick
+     */
+    public long getTick() {
+        return ticks;
+    }
+
+    /**
+     * Average time spent capturing events per tick, over the last second
+     * @return time spent per tick, in nanoseconds
+     */
+    public long getCaptureNanosPerTick() {
+        return average(captureTicks);
+    }
+
+    /**
+     * Average time spent rendering records per tick, over the last second
+     * @return time spent per tick, in nanoseconds
+     */
+    public long getRenderNanosPerTick() {
+        return average(renderTicks);
+    }
+
+    /**
+     * Amount of flushes for this reason, since the plugin was loaded
+     * @param reason the reason
+     * @return the amount of flushes
+     */
+    public long getFlushes(@NotNull final FlushReason reason) {
+        return flushes[reason.ordinal()].sum();
+    }
+
+    /**
+     * Total amount of flushes, since the plugin was loaded
+     * @return the amount of flushes
+     */
+    public long getFlushes() {
+        long total = 0;
+        for (final LongAdder adder : flushes) total += adder.sum();
+        return total;
+    }
+
+    /**
+     * Total amount of lines written, since the plugin was loaded
+     * @return the amount of lines written
+     */
+    public long getFlushedLines() {
+        return flushedLines.sum();
+    }
+
+    /**
+     * Total amount of batched appends, since the plugin was loaded
+     * @return the amount of appends
+     */
+    public long getFlushedFiles() {
+        return flushedFiles.sum();
+    }
+
+    /**
+     * Largest amount of lines written in one flush
+     * @return the largest batch
+     */
+    public long getLargestBatch() {
+        return largestBatch.get();
+    }
+
+    /**
+     * Amount of flushes per batch size: 1 line, up to 10, up to 100, up to 1000 and more than 1000 lines
+     * @return the amount of flushes per batch size
+     */
+    @NotNull
+    public long[] getBatchSizes() {
+        final long[] sizes = new long[batches.length];
+        for (int i = 0; i < sizes.length; i++) sizes[i] = batches[i].sum();
+        return sizes;
+    }
+
+    private static LongAdder[] newAdders(final int size) {
+        final LongAdder[] adders = new LongAdder[size];
+        for (int i = 0; i < size; i++) adders[i] = new LongAdder();
+        return adders;
+    }
+
+    private static long average(final long[] ticks) {
+        long total = 0;
+        for (final long t : ticks) total += t;
+        return total / ticks.length;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A log message compiled once into literal segments and placeholder slots.
+ * A placeholder used several times in the message shares the same slot.
+ * @version 1.2
+ * @author Andross
+ */
+public final class LogTemplate {
+    // Markers of slots holding a number, compared by identity
+    static final String NUMBER = new String("{number}");
+    static final String DECIMAL = new String("{decimal}");
+    private static final Pattern argsPattern = Pattern.compile("\\{(.*?)\\}"); // e.g: player.name
+    private static final ThreadLocal<StringBuilder> buffer = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    private final String source;
+    // Message parts: literals[i], then slot positions[i], ..., then literals[positions.length]
+    private final String[] literals;
+    private final int[] positions;
+    // Slots
+    private final String[] keys; // e.g: BLOCK.NAME
+    private final String[] prefixes; // e.g: BLOCK, null if none
+    private final String[] args; // e.g: NAME
+    private final String[] placeholders; // raw text, e.g: {block.name}
+    private final Map<String, Integer> slots = new HashMap<>();
+    private volatile Pattern pattern = null; // reverse of the rendering, compiled when needed
+
+    /**
+     * Compiling a log message
+     * @param source the message, as written in the config
+     */
+    public LogTemplate(@NotNull final String source) {
+        this.source = source;
+
+        final List<String> literalsList = new ArrayList<>();
+        final List<Integer> positionsList = new ArrayList<>();
+        final List<String> keysList = new ArrayList<>();
+        final List<String> placeholdersList = new ArrayList<>();
+
+        final Matcher m = argsPattern.matcher(source);
+        int last = 0;
+        while (m.find()) {
+            literalsList.add(source.substring(last, m.start()));
+            last = m.end();
+
+            final String key = m.group(1).toUpperCase();
+            Integer slot = slots.get(key);
+            if (slot == null) {
+                slot = keysList.size();
+                slots.put(key, slot);
+                keysList.add(key);
+                placeholdersList.add(m.group());
+            }
+            positionsList.add(slot);
+        }
+        literalsList.add(source.substring(last));
+
+        literals = literalsList.toArray(new String[0]);
+        positions = positionsList.stream().mapToInt(Integer::intValue).toArray();
+        keys = keysList.toArray(new String[0]);
+        placeholders = placeholdersList.toArray(new String[0]);
+        prefixes = new String[keys.length];
+        args = new String[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            final String[] split = keys[i].split("\\.");
+            prefixes[i] = split.length > 1 ? split[0] : null;
+            args[i] = split.length > 1 ? split[1] : keys[i];
+        }
+    }
+
+    /**
+     * Get the slot of a placeholder
+     * @param key placeholder key, uppercased and without braces (e.g: BLOCK.NAME)
+     * @return the slot index, -1 if this placeholder is not in the message
+     */
+    public int getSlot(@NotNull final String key) {
+        final Integer slot = slots.get(key);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Get the amount of distinct placeholders in this message
+     * @return the amount of slots
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * Get the key of a slot
+     * @param slot slot index
+     * @return the key, uppercased (e.g: BLOCK.NAME)
+     */
+    @NotNull
+    public String getKey(final int slot) {
+        return keys[slot];
+    }
+
+    /**
+     * Get the prefix of a slot, which is the part before the dot
+     * @param slot slot index
+     * @return the prefix, uppercased (e.g: BLOCK), null if none
+     */
+    @Nullable
+    public String getPrefix(final int slot) {
+        return prefixes[slot];
+    }
+
+    /**
+     * Get the argument of a slot, which is the part after the dot
+     * @param slot slot index
+     * @return the argument, uppercased (e.g: NAME)
+     */
+    @NotNull
+    public String getArg(final int slot) {
+        return args[slot];
+    }
+
+    /**
+     * Rendering the message with the slot values.
+     * Slots without value are rendered as written in the config.
+     * @param values values of the slots, indexed by slot
+     * @param numbers numbers of the slots marked as number, null if none
+     * @return the rendered message
+     */
+    @NotNull
+    public String render(@NotNull final String[] values, @Nullable final long[] numbers) {
+        if (positions.length == 0) return source;
+
+        final StringBuilder sb = buffer.get();
+        sb.setLength(0);
+        for (int i = 0; i < positions.length; i++) {
+            sb.append(literals[i]);
+            final int slot = positions[i];
+            final String value = values[slot];
+            if (value == null) sb.append(placeholders[slot]);
+            else if (value == NUMBER && numbers != null) sb.append(numbers[slot]);
+            else if (value == DECIMAL && numbers != null) sb.append(Double.longBitsToDouble(numbers[slot]));
+            else sb.append(value);
+        }
+        sb.append(literals[positions.length]);
+        return sb.toString();
+    }
+
+    /**
+     * Reading back the slot values of a rendered message.
+     * A slot used several times in the message keeps its first value.
+     * @param message the rendered message
+     * @return values of the slots, indexed by slot; null if the message does not match this template
+     */
+    @Nullable
+    public String[] parse(@NotNull final String message) {
+        Pattern p = pattern;
+        if (p == null) {
+            final StringBuilder regex = new StringBuilder();
+            for (int i = 0; i < positions.length; i++) {
+                if (!literals[i].isEmpty()) regex.append(Pattern.quote(literals[i]));
+                regex.append("(.*?)");
+            }
+            if (!literals[positions.length].isEmpty()) regex.append(Pattern.quote(literals[positions.length]));
+            pattern = p = Pattern.compile(regex.toString(), Pattern.DOTALL);
+        }
+
+        final Matcher m = p.matcher(message);
+        if (!m.matches()) return null;
+        final String[] values = new String[keys.length];
+        for (int i = 0; i < positions.length; i++) if (values[positions[i]] == null) values[positions[i]] = m.group(i + 1);
+        return values;
+    }
+
+    /**
+     * Get the message as written in the config
+     * @return the source message
+     */
+    @NotNull
+    public String getSource() {
+        return source;
+    }
+}
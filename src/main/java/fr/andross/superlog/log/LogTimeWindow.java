@@ -0,0 +1,131 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Time range of a logs search.
+ * Log files are picked by their day, indexed logs are found by binary search over the index,
+ * and the other logs are checked with their log time.
+ * @version 1.2
+ * @author Andross
+ */
+public final class LogTimeWindow {
+    private final long from;
+    private final long to;
+    private final LogRouter router;
+    private final LogClock clock;
+
+    /**
+     * Creating a time range
+     * @param from start of the range, in milliseconds (included)
+     * @param to end of the range, in milliseconds (included)
+     * @param router the router, to get the day of the log files
+     * @param clock the clock, to parse the log times
+     */
+    public LogTimeWindow(final long from, final long to, @NotNull final LogRouter router, @NotNull final LogClock clock) {
+        this.from = from;
+        this.to = to;
+        this.router = router;
+        this.clock = clock;
+    }
+
+    /**
+     * Parsing a time entered by a player: HH:mm[:ss] (today), yyyy-MM-dd, or yyyy-MM-ddTHH:mm[:ss]
+     * @param text the time entered
+     * @param end if this is the end of a range: a day then ends at midnight, and a time at the end of its minute or second
+     * @param clock the clock, for the server time zone
+     * @return the time, in milliseconds
+     * @throws IllegalArgumentException if the time can not be parsed
+     */
+    public static long parse(@NotNull final String text, final boolean end, @NotNull final LogClock clock) throws IllegalArgumentException {
+        final LocalDateTime date;
+        final long precision; // precision of the time entered, in milliseconds
+        try {
+            if (text.indexOf('T') > 0) date = LocalDateTime.parse(text);
+            else if (text.indexOf('-') > 0) date = LocalDate.parse(text).atStartOfDay();
+            else date = LocalDate.now(clock.getZone()).atTime(LocalTime.parse(text));
+        } catch (final DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid time '" + text + "'.");
+        }
+        if (text.indexOf(':') < 0) precision = 86400000L;
+        else precision = text.indexOf(':') == text.lastIndexOf(':') ? 60000L : 1000L;
+        final long time = date.atZone(clock.getZone()).toInstant().toEpochMilli();
+        return end ? time + precision - 1 : time;
+    }
+
+    /**
+     * Get the start of the range
+     * @return the start of the range, in milliseconds (included)
+     */
+    public long getFrom() {
+        return from;
+    }
+
+    /**
+     * Get the end of the range
+     * @return the end of the range, in milliseconds (included)
+     */
+    public long getTo() {
+        return to;
+    }
+
+    /**
+     * Get the day of a log file
+     * @param file the log file
+     * @return the day, null if unknown
+     */
+    @Nullable
+    public LocalDate getDate(@NotNull final File file) {
+        return router.getDate(file.getName());
+    }
+
+    /**
+     * If a log file can hold logs of this range, checked with its day
+     * @param file the log file
+     * @return true if the file can hold logs of this range, otherwise false
+     */
+    public boolean testFile(@NotNull final File file) {
+        final LocalDate date = getDate(file);
+        if (date == null) return true;
+        final long start = date.atStartOfDay(clock.getZone()).toInstant().toEpochMilli();
+        final long end = date.plusDays(1).atStartOfDay(clock.getZone()).toInstant().toEpochMilli();
+        return end > from && start <= to;
+    }
+
+    /**
+     * If a log line is in this range, checked with its log time
+     * @param line the log line
+     * @param date the day of the log file, null if unknown
+     * @return true if the log is in the range or if its time is unknown, otherwise false
+     */
+    public boolean testLine(@NotNull final String line, @Nullable final LocalDate date) {
+        final int end = line.indexOf(']');
+        if (!line.startsWith("[") || end < 0) return true;
+        final long time = clock.parseLogTime(line.substring(1, end), date);
+        return time == Long.MIN_VALUE || (time >= from && time <= to);
+    }
+}
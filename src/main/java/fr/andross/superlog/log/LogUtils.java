@@ -18,39 +18,21 @@
 package fr.andross.superlog.log;
 
 import fr.andross.superlog.SuperLog;
-import fr.andross.superlog.utils.LoggedEvent;
 import fr.andross.superlog.utils.Utils;
-import org.bukkit.block.Block;
 import org.bukkit.command.CommandSender;
-import org.bukkit.entity.Entity;
-import org.bukkit.entity.HumanEntity;
 import org.bukkit.entity.Player;
 import org.bukkit.event.Event;
-import org.bukkit.event.block.BlockEvent;
-import org.bukkit.event.block.BlockMultiPlaceEvent;
-import org.bukkit.event.entity.EntityEvent;
-import org.bukkit.event.hanging.HangingEvent;
-import org.bukkit.event.inventory.InventoryEvent;
-import org.bukkit.event.player.PlayerEvent;
-import org.bukkit.event.server.PluginEvent;
-import org.bukkit.event.vehicle.VehicleEvent;
-import org.bukkit.event.weather.WeatherEvent;
-import org.bukkit.event.world.ChunkEvent;
-import org.bukkit.event.world.WorldEvent;
-import org.bukkit.inventory.Inventory;
-import org.bukkit.inventory.InventoryView;
-import org.bukkit.plugin.EventExecutor;
-import org.bukkit.plugin.Plugin;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.net.ssl.HttpsURLConnection;
 import java.io.*;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.net.URL;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.zip.GZIPOutputStream;
@@ -63,10 +45,30 @@ import java.util.zip.GZIPOutputStream;
 public final class LogUtils {
     private final SuperLog pl;
     private final File dataFolder;
-    private final DateFormat dayFormat = new SimpleDateFormat("dd");
-    private final DateFormat monthFormat = new SimpleDateFormat("MM");
-    private final DateFormat yearFormat = new SimpleDateFormat("yy");
-    private final DateFormat all = new SimpleDateFormat("HH:mm:ss");
+
+    private static final MethodHandle noPlayer = MethodHandles.dropArguments(MethodHandles.constant(Player.class, null), 0, Event.class);
+    private static final ClassValue<MethodHandle> playerGetters = new ClassValue<MethodHandle>() {
+        @Override
+        protected MethodHandle computeValue(@NotNull final Class<?> type) {
+            try {
+                // A getPlayer() method?
+                for (final Method m : type.getMethods()) {
+                    if (m.getName().equals("getPlayer") && m.getParameterCount() == 0 && Player.class.isAssignableFrom(m.getReturnType()))
+                        return MethodHandles.publicLookup().unreflect(m).asType(MethodType.methodType(Player.class, Event.class));
+                }
+
+                // A player field?
+                for (Class<?> c = type; c != null && c != Event.class; c = c.getSuperclass()) {
+                    for (final Field f : c.getDeclaredFields()) {
+                        if (!f.getName().equals("player") || !Player.class.isAssignableFrom(f.getType())) continue;
+                        f.setAccessible(true);
+                        return MethodHandles.lookup().unreflectGetter(f).asType(MethodType.methodType(Player.class, Event.class));
+                    }
+                }
+            } catch (final Exception ignored) { /* no accessible player */ }
+            return noPlayer;
+        }
+    };
 
     /**
      * Should not be instantiated. Use {@link SuperLog#getLogUtils()} instead.
@@ -78,40 +80,23 @@ public final class LogUtils {
     }
 
     /**
-     * Generate a log file
-     * @param log the event logged
-     * @return the generated file
-     */
-    @Nullable
-    public File generateFile(@NotNull final LogSerializer log) {
-        final String fileDirectory = dataFolder + File.separator + "logs" + File.separator;
-        final Date d = new Date();
-        final String fileName = pl.getConfig().getString("logs-format");
-        if (fileName == null) return null;
-        return new File((log.getPlayerName() != null ? fileDirectory + "players" + File.separator + log.getPlayerName() + File.separator : fileDirectory),
-                fileName.replace("{EVENT}", log.getEvent().getEventName())
-                        .replace("{TYPE}", log.getEventType())
-                        .replace("{DAY}", dayFormat.format(d))
-                        .replace("{MONTH}", monthFormat.format(d))
-                        .replace("{YEAR}", yearFormat.format(d)));
-    }
-
-    /**
-     * Get a formated string of the current time for logs
-     * @return current log time
+     * Get a formated string of a time for logs
+     * @param time the time, in milliseconds
+     * @return log time
      */
     @NotNull
-    public String getCurrentLogTime() {
-        return pl.getLogConfig().getDateFormat().format(new Date());
+    public String getLogTime(final long time) {
+        return pl.getLogConfig().getSettings().getClock().getLogTime(time);
     }
 
     /**
-     * Get a formated string of the current time for live logs
-     * @return current live log time
+     * Get a formated string of a time for live logs
+     * @param time the time, in milliseconds
+     * @return live log time
      */
     @NotNull
-    public String getCurrentLogLiveTime() {
-        return all.format(new Date());
+    public String getLogLiveTime(final long time) {
+        return pl.getLogConfig().getSettings().getClock().getLiveTime(time);
     }
 
     /**
@@ -182,8 +167,8 @@ public final class LogUtils {
             // Not old enough?
             if ((System.currentTimeMillis() - file.lastModified()) < dayPassed) continue;
 
-            // Already a GZipped file?
-            if (getFileExtension(file).equalsIgnoreCase("gz")) continue;
+            // Already a GZipped file, or an index?
+            if (getFileExtension(file).equalsIgnoreCase("gz") || file.getName().endsWith(LogIndex.EXTENSION)) continue;
 
             // Writing
             try (final FileInputStream newFile = new FileInputStream(file);
@@ -197,6 +182,7 @@ public final class LogUtils {
                 continue;
             }
             file.delete();
+            LogIndex.getFile(file).delete(); // offsets are not valid in the gzipped file
             count++;
         }
         return count;
@@ -240,6 +226,12 @@ public final class LogUtils {
             // Not old enough?
             if ((System.currentTimeMillis() - file.lastModified()) < dayPassed) continue;
 
+            // Index of an old log
+            if (file.getName().endsWith(LogIndex.EXTENSION)) {
+                file.delete();
+                continue;
+            }
+
             // Checking if it deletes even GZipped files
             if (!evenGZippedLogs && getFileExtension(file).equalsIgnoreCase("gz")) continue;
 
@@ -262,443 +254,14 @@ public final class LogUtils {
     }
 
     /**
-     * Creating an event executor for a group of event
-     * @param event event type
-     * @param loggedEvent logged event configuration
-     * @return an event executor, null if not supported
-     */
-    @Nullable
-    public EventExecutor createEventExecutor(@NotNull final Class<? extends Event> event, @NotNull final LoggedEvent loggedEvent) {
-        EventExecutor eventExecutor = null;
-        Class<?> superClasses = event.getSuperclass();
-        while (superClasses != null) {
-            switch (superClasses.getSimpleName()) {
-                case "PlayerEvent":
-                    eventExecutor = (bukkitListener, bukkitEvent) -> {
-                        if (pl.getLogConfig().isEnabled()) logPlayerEvent(bukkitEvent, loggedEvent);
-                    };
-                    break;
-                case "BlockEvent":
-                    eventExecutor = (bukkitListener, bukkitEvent) -> {
-                        if (pl.getLogConfig().isEnabled()) logBlockEvent(bukkitEvent, loggedEvent);
-                    };
-                    break;
-                case "EntityEvent":
-                    eventExecutor = (bukkitListener, bukkitEvent) -> {
-                        if (pl.getLogConfig().isEnabled()) logEntityEvent(bukkitEvent, loggedEvent);
-                    };
-                    break;
-                case "HangingEvent":
-                    eventExecutor = (bukkitListener, bukkitEvent) -> {
-                        if (pl.getLogConfig().isEnabled()) logHangingEvent(bukkitEvent, loggedEvent);
-                    };
-                    break;
-                case "InventoryEvent":
-                    eventExecutor = (bukkitListener, bukkitEvent) -> {
-                        if (pl.getLogConfig().isEnabled()) logInventoryEvent(bukkitEvent, loggedEvent);
-                    };
-                    break;
-                case "ServerEvent":
-                    eventExecutor = (bukkitListener, bukkitEvent) -> {
-                        if (pl.getLogConfig().isEnabled()) logServerEvent(bukkitEvent, loggedEvent);
-                    };
-                    break;
-                case "PluginEvent":
-                    eventExecutor = (bukkitListener, bukkitEvent) -> {
-                        if (pl.getLogConfig().isEnabled()) logPluginEvent(bukkitEvent, loggedEvent);
-                    };
-                    break;
-                case "VehicleEvent":
-                    eventExecutor = (bukkitListener, bukkitEvent) -> {
-                        if (pl.getLogConfig().isEnabled()) logVehicleEvent(bukkitEvent, loggedEvent);
-                    };
-                    break;
-                case "WeatherEvent":
-                    eventExecutor = (bukkitListener, bukkitEvent) -> {
-                        if (pl.getLogConfig().isEnabled()) logWeatherEvent(bukkitEvent, loggedEvent);
-                    };
-                    break;
-                case "WorldEvent":
-                    eventExecutor = (bukkitListener, bukkitEvent) -> {
-                        if (pl.getLogConfig().isEnabled()) logWorldEvent(bukkitEvent, loggedEvent);
-                    };
-                    break;
-                case "ChunkEvent":
-                    eventExecutor = (bukkitListener, bukkitEvent) -> {
-                        if (pl.getLogConfig().isEnabled()) logChunkEvent(bukkitEvent, loggedEvent);
-                    };
-                    break;
-                default: superClasses = superClasses.getSuperclass(); break;
-            }
-            if (eventExecutor != null) return eventExecutor;
-        }
-        return null;
-    }
-
-    /**
-     * Logging a PlayerEvent
-     * @param event the event runned
-     * @param loggedEvent the log event configuration
-     */
-    public void logPlayerEvent(@NotNull final Event event, @NotNull final LoggedEvent loggedEvent) {
-        final boolean debug = pl.getLogManager().isDebug();
-        if (debug) pl.getLogger().info("[Debug] Started " + event.getEventName());
-
-        // Getting Player
-        final Player p = ((PlayerEvent) event).getPlayer();
-
-        // Is Citizens NPC?
-        if (pl.getLogConfig().isCitizensEnabled() && p.hasMetadata("NPC")) return;
-
-        // Starting serialization
-        final LogSerializer serializer = new LogSerializer(pl, loggedEvent, event);
-        // Ignored event?
-        if (serializer.isAnIgnoredEvent(p.getName(), null)) {
-            if (debug) pl.getLogger().info("[Debug] Event should not be logged. Ignoring it.");
-            return;
-        }
-
-        // Serializing fields
-        if (serializer.serializeFields(event)) {
-            if (debug) pl.getLogger().info("[Debug] Fields should not be logged. Ignoring it.");
-            return;
-        }
-
-        // Serializing the rest of the event
-        serializer.serialize(p, null);
-        serializer.setPlayerName(p.getName());
-        serializer.setEventType("PlayerEvents");
-        if (debug) pl.getLogger().info("[Debug] Serialization: OK.");
-
-        // Adding log
-        pl.getLogManager().log(serializer);
-    }
-
-    /**
-     * Logging a BlockEvent
-     * @param event the event runned
-     * @param loggedEvent the log event configuration
-     */
-    public void logBlockEvent(@NotNull final Event event, @NotNull final LoggedEvent loggedEvent) {
-        // We ignore a BlockMultiPlaceEvent
-        if (event instanceof BlockMultiPlaceEvent) return;
-
-        final boolean debug = pl.getLogManager().isDebug();
-        if (debug) pl.getLogger().info("[Debug] Started " + event.getEventName());
-
-        // Getting Block
-        final Block b = ((BlockEvent) event).getBlock();
-
-        // Block event related to a player?
-        Player p = null;
-        try {
-            Field f = event.getClass().getDeclaredField("player");
-            f.setAccessible(true);
-            p = (Player) f.get(event);
-        } catch (final Exception ignored) { /* we don't care */ }
-
-        // Starting serialization
-        final LogSerializer serializer = new LogSerializer(pl, loggedEvent, event);
-        // Ignored event?
-        if (serializer.isAnIgnoredEvent(b.getType().name(), null)) {
-            if (debug) pl.getLogger().info("[Debug] Event should not be logged. Ignoring it.");
-            return;
-        }
-
-        // Serializing fields
-        if (serializer.serializeFields(event)) {
-            if (debug) pl.getLogger().info("[Debug] Fields should not be logged. Ignoring it.");
-            return;
-        }
-
-        // Serializing the rest of the event
-        serializer.serialize(b, null);
-        if (p != null) serializer.setPlayerName(p.getName());
-        serializer.setEventType("BlockEvents");
-        if (debug) pl.getLogger().info("[Debug] Serialization: OK.");
-
-        // Adding log
-        pl.getLogManager().log(serializer);
-    }
-
-    /**
-     * Logging an EntityEvent
-     * @param event the event runned
-     * @param loggedEvent the log event configuration
-     */
-    public void logEntityEvent(@NotNull final Event event, @NotNull final LoggedEvent loggedEvent) {
-        final boolean debug = pl.getLogManager().isDebug();
-        if (debug) pl.getLogger().info("[Debug] Started " + event.getEventName());
-
-        // Getting Entity, or the player if it's a player related event
-        final Entity e = ((EntityEvent) event).getEntity();
-        final Player p = (e instanceof Player) ? ((Player) e) : null;
-
-        // Starting serialization
-        final LogSerializer serializer = new LogSerializer(pl, loggedEvent, event);
-        // Ignored event?
-        if (serializer.isAnIgnoredEvent(e.getType().name(), null)) {
-            if (debug) pl.getLogger().info("[Debug] Event should not be logged. Ignoring it.");
-            return;
-        }
-
-        // Serializing fields
-        if (serializer.serializeFields(event)) {
-            if (debug) pl.getLogger().info("[Debug] Fields should not be logged. Ignoring it.");
-            return;
-        }
-
-        // Serializing the rest of the event
-        serializer.serialize(e, null);
-        if (p != null) serializer.setPlayerName(p.getName());
-        serializer.setEventType("EntityEvents");
-        if (debug) pl.getLogger().info("[Debug] Serialization: OK.");
-
-        // Adding log
-        pl.getLogManager().log(serializer);
-    }
-
-    /**
-     * Logging a HangingEvent
-     * @param event the event runned
-     * @param loggedEvent the log event configuration
-     */
-    public void logHangingEvent(@NotNull final Event event, @NotNull final LoggedEvent loggedEvent) {
-        final boolean debug = pl.getLogManager().isDebug();
-        if (debug) pl.getLogger().info("[Debug] Started " + event.getEventName());
-
-        // Getting the Entity
-        final Entity e = ((HangingEvent) event).getEntity();
-
-        // Starting serialization
-        final LogSerializer serializer = new LogSerializer(pl, loggedEvent, event);
-        // Serializing fields
-        if (serializer.serializeFields(event)) {
-            if (debug) pl.getLogger().info("[Debug] Fields should not be logged. Ignoring it.");
-            return;
-        }
-
-        // Hanging event related to a player?
-        final Player p;
-        try{
-            Field f = event.getClass().getDeclaredField("player");
-            f.setAccessible(true);
-            p = (Player) f.get(event);
-            serializer.serialize(p, "PLAYER");
-            serializer.setPlayerName(p.getName());
-        } catch (final Exception ignored) { /* we don't care */ }
-
-        // Serializing the rest of the event
-        serializer.serialize(e, null);
-        serializer.setEventType("HangingEvents");
-        if (debug) pl.getLogger().info("[Debug] Serialization: OK.");
-
-        // Adding log
-        pl.getLogManager().log(serializer);
-    }
-
-    /**
-     * Logging an InventoryEvent
-     * @param event the event runned
-     * @param loggedEvent the log event configuration
-     */
-    public void logInventoryEvent(@NotNull final Event event, @NotNull final LoggedEvent loggedEvent) {
-        final boolean debug = pl.getLogManager().isDebug();
-        if (debug) pl.getLogger().info("[Debug] Started " + event.getEventName());
-
-        // Getting Inventory
-        final InventoryView iv = ((InventoryEvent) event).getView();
-        final Inventory i = iv.getTopInventory();
-        final HumanEntity p = iv.getPlayer();
-
-        // Starting serialization
-        final LogSerializer serializer = new LogSerializer(pl, loggedEvent, event);
-        // Ignored event?
-        if (serializer.isAnIgnoredEvent(i.getType().name(), null)) {
-            if (debug) pl.getLogger().info("[Debug] Event should not be logged. Ignoring it.");
-            return;
-        }
-
-        // Serializing fields
-        if (serializer.serializeFields(event)) {
-            if (debug) pl.getLogger().info("[Debug] Fields should not be logged. Ignoring it.");
-            return;
-        }
-
-        // Serializing the rest of the event
-        serializer.serialize(iv, p.getLocation());
-        serializer.serialize(p, "PLAYER");
-        serializer.setPlayerName(p.getName());
-        serializer.setEventType("InventoryEvents");
-        if (debug) pl.getLogger().info("[Debug] Serialization: OK.");
-
-        // Adding log
-        pl.getLogManager().log(serializer);
-    }
-
-    /**
-     * Logging a ServerEvent
-     * @param event the event runned
-     * @param loggedEvent the log event configuration
-     */
-    public void logServerEvent(@NotNull final Event event, @NotNull final LoggedEvent loggedEvent) {
-        final boolean debug = pl.getLogManager().isDebug();
-        if (debug) pl.getLogger().info("[Debug] Started " + event.getEventName());
-
-        // Starting serialization
-        final LogSerializer serializer = new LogSerializer(pl, loggedEvent, event);
-
-        // Serializing fields
-        if (serializer.serializeFields(event)) {
-            if (debug) pl.getLogger().info("[Debug] Fields should not be logged. Ignoring it.");
-            return;
-        }
-
-        // Serializing the rest of the event
-        serializer.setEventType("ServerEvents");
-        if (debug) pl.getLogger().info("[Debug] Serialization: OK.");
-
-        // Adding log
-        pl.getLogManager().log(serializer);
-    }
-
-    /**
-     * Logging a PluginEvent
-     * @param event the event runned
-     * @param loggedEvent the log event configuration
-     */
-    public void logPluginEvent(@NotNull final Event event, @NotNull final LoggedEvent loggedEvent) {
-        final boolean debug = pl.getLogManager().isDebug();
-        if (debug) pl.getLogger().info("[Debug] Started " + event.getEventName());
-
-        // Getting plugin
-        final Plugin plugin = ((PluginEvent) event).getPlugin();
-
-        // Starting serialization
-        final LogSerializer serializer = new LogSerializer(pl, loggedEvent, event);
-        // Ignored event?
-        if (serializer.isAnIgnoredEvent(plugin.getName(), null)) {
-            if (debug) pl.getLogger().info("[Debug] Event should not be logged. Ignoring it.");
-            return;
-        }
-
-        // Serializing fields
-        if (serializer.serializeFields(event)) {
-            if (debug) pl.getLogger().info("[Debug] Fields should not be logged. Ignoring it.");
-            return;
-        }
-
-        // Serializing the rest of the event
-        serializer.serialize(plugin);
-        serializer.setEventType("PluginEvents");
-        if (debug) pl.getLogger().info("[Debug] Serialization: OK.");
-
-        // Adding log
-        pl.getLogManager().log(serializer);
-    }
-
-    /**
-     * Logging a VehicleEvent
-     * @param event the event runned
-     * @param loggedEvent the log event configuration
-     */
-    public void logVehicleEvent(@NotNull final Event event, @NotNull final LoggedEvent loggedEvent) {
-        final boolean debug = pl.getLogManager().isDebug();
-        if (debug) pl.getLogger().info("[Debug] Started " + event.getEventName());
-
-        // Starting serialization
-        final LogSerializer serializer = new LogSerializer(pl, loggedEvent, event);
-        // Serializing fields
-        if (serializer.serializeFields(event)) {
-            if (debug) pl.getLogger().info("[Debug] Fields should not be logged. Ignoring it.");
-            return;
-        }
-
-        // Serializing the rest of the event
-        serializer.serialize(((VehicleEvent) event).getVehicle(), null);
-        serializer.setEventType("VehicleEvents");
-        if (debug) pl.getLogger().info("[Debug] Serialization: OK.");
-
-        // Adding log
-        pl.getLogManager().log(serializer);
-    }
-
-    /**
-     * Logging a WeatherEvent
-     * @param event the event runned
-     * @param loggedEvent the log event configuration
+     * Get how to get the player involved into an event, through its getPlayer() method or its player field.
+     * Resolved once per event class.
+     * @param event the event class
+     * @return a handle (Event)Player, returning null if no player is involved
      */
-    public void logWeatherEvent(@NotNull final Event event, @NotNull final LoggedEvent loggedEvent) {
-        final boolean debug = pl.getLogManager().isDebug();
-        if (debug) pl.getLogger().info("[Debug] Started " + event.getEventName());
-
-        // Starting serialization
-        final LogSerializer serializer = new LogSerializer(pl, loggedEvent, event);
-        // Serializing fields
-        if (serializer.serializeFields(event)) {
-            if (debug) pl.getLogger().info("[Debug] Fields should not be logged. Ignoring it.");
-            return;
-        }
-
-        // Serializing the rest of the event
-        serializer.serialize(((WeatherEvent) event).getWorld());
-        serializer.setEventType("WeatherEvents");
-        if (debug) pl.getLogger().info("[Debug] Serialization: OK.");
-
-        // Adding log
-        pl.getLogManager().log(serializer);
-    }
-
-    /**
-     * Logging a WorldEvent
-     * @param event the event runned
-     * @param loggedEvent the log event configuration
-     */
-    public void logWorldEvent(@NotNull final Event event, @NotNull final LoggedEvent loggedEvent) {
-        final boolean debug = pl.getLogManager().isDebug();
-        if (debug) pl.getLogger().info("[Debug] Started " + event.getEventName());
-
-        // Starting serialization
-        final LogSerializer serializer = new LogSerializer(pl, loggedEvent, event);
-        // Serializing fields
-        if (serializer.serializeFields(event)) {
-            if (debug) pl.getLogger().info("[Debug] Fields should not be logged. Ignoring it.");
-            return;
-        }
-
-        // Serializing the rest of the event
-        serializer.serialize(((WorldEvent) event).getWorld());
-        serializer.setEventType("WorldEvents");
-        if (debug) pl.getLogger().info("[Debug] Serialization: OK.");
-
-        // Adding log
-        pl.getLogManager().log(serializer);
-    }
-
-    /**
-     * Logging a ChunkEvent
-     * @param event the event runned
-     * @param loggedEvent the log event configuration
-     */
-    public void logChunkEvent(@NotNull final Event event, @NotNull final LoggedEvent loggedEvent) {
-        final boolean debug = pl.getLogManager().isDebug();
-        if (debug) pl.getLogger().info("[Debug] Started " + event.getEventName());
-
-        // Starting serialization
-        final LogSerializer serializer = new LogSerializer(pl, loggedEvent, event);
-        // Serializing fields
-        if (serializer.serializeFields(event)) {
-            if (debug) pl.getLogger().info("[Debug] Fields should not be logged. Ignoring it.");
-            return;
-        }
-
-        // Serializing the rest of the event
-        serializer.serialize(((ChunkEvent) event).getChunk());
-        serializer.setEventType("ChunkEvents");
-        if (debug) pl.getLogger().info("[Debug] Serialization: OK.");
-
-        // Adding log
-        pl.getLogManager().log(serializer);
+    @NotNull
+    static MethodHandle getPlayerGetter(@NotNull final Class<? extends Event> event) {
+        return playerGetters.get(event);
     }
 
 }
@@ -0,0 +1,184 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool of open log files writers.
+ * The least recently used writer is closed when too many files are open,
+ * writers unused for a while are closed, and all writers are closed when the day changes.
+ * @version 1.2
+ * @author Andross
+ */
+public final class LogWriterPool {
+    private static final long IDLE_TIMEOUT = TimeUnit.SECONDS.toMillis(60);
+    private static final long CHECK_DELAY = TimeUnit.SECONDS.toMillis(1);
+    private final Logger logger;
+    private final Map<File, PooledWriter> writers;
+    private final boolean index;
+    private LocalDate day = LocalDate.now();
+    private long lastCheck = System.currentTimeMillis();
+
+    /**
+     * Creating a writer pool
+     * @param logger the plugin logger
+     * @param maxOpenFiles maximum amount of files open at the same time
+     * @param index if a sidecar index should be written for each log file
+     */
+    public LogWriterPool(@NotNull final Logger logger, final int maxOpenFiles, final boolean index) {
+        this.logger = logger;
+        this.index = index;
+        this.writers = new LinkedHashMap<File, PooledWriter>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<File, PooledWriter> eldest) {
+                if (size() <= maxOpenFiles) return false;
+                close(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Appending the waiting logs of a sink to its log file, and flushing them.
+     * The sidecar index is updated after the logs are written.
+     * @param sink the sink
+     * @throws IOException if the file can not be written
+     */
+    public synchronized void write(@NotNull final LogSink sink) throws IOException {
+        final File f = sink.getFile();
+        PooledWriter pooled = writers.get(f);
+        if (pooled == null) {
+            final File directory = f.getParentFile();
+            if (directory != null && !directory.exists()) directory.mkdirs();
+            pooled = new PooledWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f, true), StandardCharsets.UTF_8)));
+            if (index) {
+                pooled.length = f.length();
+                try {
+                    pooled.index = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(LogIndex.getFile(f), true), StandardCharsets.UTF_8));
+                } catch (final IOException e) {
+                    logger.log(Level.WARNING, "Error opening the index of '" + f.getName() + "'.", e);
+                }
+            }
+            writers.put(f, pooled);
+        }
+
+        try {
+            for (final String line : sink.getLines()) pooled.writer.append(line).append(System.lineSeparator());
+            pooled.writer.flush();
+        } catch (final IOException e) {
+            writers.remove(f);
+            close(f, pooled);
+            throw e;
+        }
+        pooled.lastUsed = System.currentTimeMillis();
+
+        // Index: the logs are written, an index error only leaves this batch unindexed
+        if (pooled.index != null) {
+            try {
+                pooled.length = LogIndex.append(pooled.index, pooled.length, sink);
+                pooled.index.flush();
+            } catch (final IOException e) {
+                logger.log(Level.WARNING, "Error writing the index of '" + f.getName() + "'.", e);
+                closeIndex(f, pooled);
+            }
+        }
+    }
+
+    /**
+     * Closing the writers unused for a while, or all writers if the day changed.
+     * Checks at most once per second.
+     */
+    public synchronized void closeIdle() {
+        final long now = System.currentTimeMillis();
+        if (now - lastCheck < CHECK_DELAY) return;
+        lastCheck = now;
+
+        // Day changed: logs are written into new files
+        final LocalDate today = LocalDate.now();
+        if (!today.equals(day)) {
+            day = today;
+            closeAll();
+            return;
+        }
+
+        final Iterator<Map.Entry<File, PooledWriter>> i = writers.entrySet().iterator();
+        while (i.hasNext()) {
+            final Map.Entry<File, PooledWriter> entry = i.next();
+            if (now - entry.getValue().lastUsed < IDLE_TIMEOUT) continue;
+            close(entry.getKey(), entry.getValue());
+            i.remove();
+        }
+    }
+
+    /**
+     * Closing all writers
+     */
+    public synchronized void closeAll() {
+        writers.forEach(this::close);
+        writers.clear();
+    }
+
+    /**
+     * Get the amount of open files
+     * @return the amount of open files
+     */
+    public synchronized int size() {
+        return writers.size();
+    }
+
+    private void close(@NotNull final File f, @NotNull final PooledWriter pooled) {
+        try {
+            pooled.writer.close();
+        } catch (final IOException e) {
+            logger.log(Level.WARNING, "Error closing log file '" + f.getName() + "'.", e);
+        }
+        closeIndex(f, pooled);
+    }
+
+    private void closeIndex(@NotNull final File f, @NotNull final PooledWriter pooled) {
+        if (pooled.index == null) return;
+        try {
+            pooled.index.close();
+        } catch (final IOException e) {
+            logger.log(Level.WARNING, "Error closing the index of '" + f.getName() + "'.", e);
+        }
+        pooled.index = null;
+    }
+
+    private static final class PooledWriter {
+        private final Writer writer;
+        private Writer index = null;
+        private long length = 0; // length of the log file, in bytes
+        private long lastUsed = System.currentTimeMillis();
+
+        private PooledWriter(@NotNull final Writer writer) {
+            this.writer = writer;
+        }
+    }
+}
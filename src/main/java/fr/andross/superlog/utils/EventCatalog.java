@@ -0,0 +1,175 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.utils;
+
+import org.bukkit.event.Event;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Catalog of the known event classes, by their simple name.
+ * The catalog is generated at build time (see {@link #main(String[])}) and shipped in the jar.
+ * Events not in the catalog (e.g: Paper events) are looked up once in {@link Utils#eventPackages}, then cached.
+ * @version 1.2
+ * @author Andross
+ */
+public final class EventCatalog {
+    private static final String RESOURCE = "/events.catalog";
+    private static final Map<String, String> catalog = load();
+    private static final Map<String, Optional<Class<? extends Event>>> resolved = new ConcurrentHashMap<>();
+
+    /**
+     * Get an event class from its simple name
+     * @param event the event name, case sensitive
+     * @return the event class, null if not found
+     */
+    @Nullable
+    public static Class<? extends Event> getEventClass(@NotNull final String event) {
+        return resolved.computeIfAbsent(event, EventCatalog::lookup).orElse(null);
+    }
+
+    /**
+     * Amount of event classes known by the catalog
+     * @return the size of the catalog
+     */
+    public static int size() {
+        return catalog.size();
+    }
+
+    @NotNull
+    @SuppressWarnings("unchecked")
+    private static Optional<Class<? extends Event>> lookup(@NotNull final String event) {
+        // Known event
+        final String className = catalog.get(event);
+        if (className != null) {
+            try {
+                return Optional.of((Class<? extends Event>) Class.forName(className));
+            } catch (final Exception | LinkageError ignored) {
+                /* not available on this server version */
+            }
+        }
+
+        // Unknown event: looking in all event packages
+        for (final String p : Utils.eventPackages) {
+            try {
+                final Class<?> c = Class.forName(p + event);
+                if (Event.class.isAssignableFrom(c)) return Optional.of((Class<? extends Event>) c);
+            } catch (final Exception | LinkageError ignored) {
+                /* ignored */
+            }
+        }
+        return Optional.empty();
+    }
+
+    @NotNull
+    private static Map<String, String> load() {
+        final Map<String, String> events = new HashMap<>();
+        final InputStream in = EventCatalog.class.getResourceAsStream(RESOURCE);
+        if (in == null) return events;
+        try (final BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int separator = line.indexOf('=');
+                if (separator > 0) events.put(line.substring(0, separator), line.substring(separator + 1));
+            }
+        } catch (final IOException ignored) {
+            /* falling back on the event packages */
+        }
+        return events;
+    }
+
+    /**
+     * Generating the catalog from the event classes of the classpath.
+     * Ran at build time, during the process-classes phase.
+     * @param args the output file
+     * @throws Exception if the catalog can not be generated
+     */
+    public static void main(final String[] args) throws Exception {
+        if (args.length != 1) throw new IllegalArgumentException("Usage: EventCatalog <output file>");
+        final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        final Map<String, String> events = new TreeMap<>();
+
+        for (final String p : Utils.eventPackages) {
+            final String path = p.replace('.', '/');
+            final Enumeration<URL> urls = loader.getResources(path);
+            while (urls.hasMoreElements()) {
+                for (final String entry : list(urls.nextElement(), path)) {
+                    if (!entry.endsWith(".class") || entry.indexOf('$') >= 0) continue;
+                    final String simpleName = entry.substring(0, entry.length() - 6);
+                    try {
+                        final Class<?> c = Class.forName(p + simpleName, false, loader);
+                        if (Event.class.isAssignableFrom(c)) events.putIfAbsent(simpleName, c.getName());
+                    } catch (final Exception | LinkageError ignored) {
+                        /* not loadable */
+                    }
+                }
+            }
+        }
+
+        final File output = new File(args[0]);
+        final File directory = output.getParentFile();
+        if (directory != null && !directory.exists()) directory.mkdirs();
+        try (final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8))) {
+            for (final Map.Entry<String, String> e : events.entrySet())
+                writer.append(e.getKey()).append('=').append(e.getValue()).append('\n');
+        }
+        System.out.println("[SuperLog] Event catalog: " + events.size() + " events.");
+    }
+
+    /**
+     * Listing the files directly in a package directory or jar folder
+     * @param url the package url
+     * @param path the package path
+     * @return the files names
+     * @throws IOException if the package can not be read
+     */
+    @NotNull
+    private static List<String> list(@NotNull final URL url, @NotNull final String path) throws IOException {
+        final List<String> names = new ArrayList<>();
+        if (url.getProtocol().equals("file")) {
+            final String[] files = new File(URLDecoder.decode(url.getPath(), "UTF-8")).list();
+            if (files != null) Collections.addAll(names, files);
+            return names;
+        }
+
+        final URLConnection connection = url.openConnection();
+        if (!(connection instanceof JarURLConnection)) return names;
+        connection.setUseCaches(false);
+        try (final JarFile jar = ((JarURLConnection) connection).getJarFile()) {
+            final Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                final String name = entries.nextElement().getName();
+                if (!name.startsWith(path)) continue;
+                final String file = name.substring(path.length());
+                if (!file.isEmpty() && file.indexOf('/') < 0) names.add(file);
+            }
+        }
+        return names;
+    }
+}
@@ -17,63 +17,87 @@
  */
 package fr.andross.superlog.utils;
 
+import fr.andross.superlog.log.LogCoalescer;
+import fr.andross.superlog.log.LogCondition;
+import fr.andross.superlog.log.LogField;
+import fr.andross.superlog.log.LogPriority;
+import fr.andross.superlog.log.LogTemplate;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.lang.reflect.Field;
-import java.util.List;
-import java.util.Map;
-
 /**
  * A logged event configuration
  * @version 1.2
  * @author Andross
  */
 public final class LoggedEvent {
-    private final String message;
-    private final Map<String, List<String>> conditions;
-    private final Field[] fields;
+    private final LogTemplate template;
+    private final LogCondition condition;
+    private final LogField[] fields;
+    private final LogPriority priority;
+    private final int sampleRate;
+    private final LogCoalescer coalescer;
 
-    public LoggedEvent(@NotNull final String message, @NotNull final Map<String, List<String>> conditions, @Nullable final Field[] fields) {
-        this.message = message;
-        this.conditions = conditions;
+    public LoggedEvent(@NotNull final LogTemplate template, @Nullable final LogCondition condition, @Nullable final LogField[] fields,
+                       @NotNull final LogPriority priority, final int sampleRate, @Nullable final LogCoalescer coalescer) {
+        this.template = template;
+        this.condition = condition;
         this.fields = fields;
+        this.priority = priority;
+        this.sampleRate = sampleRate;
+        this.coalescer = coalescer;
     }
 
     /**
-     * Get the log message related to this event
-     * @return the log message for this event
+     * Get the compiled log message related to this event
+     * @return the log message template for this event
      */
     @NotNull
-    public String getMessage() {
-        return message;
+    public LogTemplate getTemplate() {
+        return template;
     }
 
     /**
-     * Get all conditions for this event
-     * @return all conditions for this event
+     * Get the IGNORED/LOGGED conditions of this event
+     * @return the conditions of this event, null if none
      */
-    @NotNull
-    public Map<String, List<String>> getConditions() {
-        return conditions;
+    @Nullable
+    public LogCondition getCondition() {
+        return condition;
     }
 
     /**
-     * Get the variables to log for a condition
-     * @param condition the condition
-     * @return list of variables if some are set for this condition, otherwise null
+     * Get the fields to serialize for this event
+     * @return fields to serialize for this event, null if none set
      */
     @Nullable
-    public final List<String> getConditions(final String condition) {
-        return conditions.get(condition);
+    public final LogField[] getFields() {
+        return fields;
     }
 
     /**
-     * Get the fields to serialize for this event
-     * @return fields to serialize for this event, null if none set
+     * Get the priority of this event
+     * @return the priority of this event
+     */
+    @NotNull
+    public LogPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Get the sample rate of this event: one event out of this rate is logged
+     * @return the sample rate, 1 if all events are logged
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Get the coalescer of this event, if its events are coalesced
+     * @return the coalescer, null if not coalesced
      */
     @Nullable
-    public final Field[] getFields() {
-        return fields;
+    public LogCoalescer getCoalescer() {
+        return coalescer;
     }
 }
@@ -31,6 +31,26 @@ import java.util.*;
  * @author Andross
  */
 public final class Utils {
+    private static final ClassValue<Map<String, Field>> fields = new ClassValue<Map<String, Field>>() {
+        @Override
+        protected Map<String, Field> computeValue(@NotNull final Class<?> type) {
+            final Map<String, Field> index = new HashMap<>();
+            // Fields of the subclasses first
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                for (final Field f : c.getDeclaredFields()) {
+                    final String name = f.getName().toUpperCase();
+                    if (index.containsKey(name)) continue;
+                    try {
+                        f.setAccessible(true);
+                        index.put(name, f);
+                    } catch (final RuntimeException ignored) {
+                        /* not accessible */
+                    }
+                }
+            }
+            return index;
+        }
+    };
     public static final char[] forbiddenFileNameChar = { '/', '\n', '\r', '\t', '\0', '\f', '`', '?', '*', '\\', '<', '>', '|', '\"', ':' };
 
     public static final String[] eventPackages = new String[] {
@@ -62,32 +82,21 @@ public final class Utils {
      * @param event event name
      * @return the event class, null if not found
      */
-    @SuppressWarnings("unchecked")
     @Nullable
     public static Class<? extends Event> getEventClass(@NotNull final String event) {
-        for (final String p : eventPackages) {
-            try {
-                return (Class<? extends Event>) Class.forName(p + event);
-            } catch (final Exception ignored) {
-                /* ignored */
-            }
-        }
-        return null;
+        return EventCatalog.getEventClass(event);
     }
 
     /**
-     * Getting all fields from a class
+     * Getting a field from a class or its superclasses, by its name (case insensitive).
+     * The fields of a class are indexed once, and returned already accessible.
      * @param clazz the class
-     * @return all fields in a class
+     * @param name the field name
+     * @return the field, null if not found or not accessible
      */
-    @NotNull
-    public static List<Field> getAllFields(@NotNull Class<?> clazz) {
-        final Set<Field> fields = new HashSet<>();
-        while (clazz != null) {
-            Collections.addAll(fields, clazz.getDeclaredFields());
-            clazz = clazz.getSuperclass();
-        }
-        return new ArrayList<>(fields);
+    @Nullable
+    public static Field getField(@NotNull final Class<?> clazz, @NotNull final String name) {
+        return fields.get(clazz).get(name.toUpperCase());
     }
 
 }
@@ -0,0 +1,90 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * IGNORED/LOGGED conditions
+ * @version 1.2
+ * @author Andross
+ */
+public class LogConditionTest {
+
+    @Test
+    public void noCondition() {
+        assertNull(LogCondition.of(null, null));
+    }
+
+    @Test
+    public void ignored() {
+        final LogCondition condition = LogCondition.of(Arrays.asList("BEDROCK", "barrier"), null);
+        assertNotNull(condition);
+        assertTrue(condition.isIgnored("BEDROCK"));
+        assertTrue(condition.isIgnored("bedrock"));
+        assertTrue(condition.isIgnored("BARRIER"));
+        assertFalse(condition.isIgnored("STONE"));
+        assertFalse(condition.isIgnored(null));
+    }
+
+    @Test
+    public void logged() {
+        final LogCondition condition = LogCondition.of(null, Collections.singletonList("DIAMOND_ORE"));
+        assertNotNull(condition);
+        assertFalse(condition.isIgnored("DIAMOND_ORE"));
+        assertFalse(condition.isIgnored("diamond_ore"));
+        assertTrue(condition.isIgnored("STONE"));
+        assertFalse(condition.isIgnored(null));
+    }
+
+    @Test
+    public void ignoredAndLogged() {
+        final LogCondition condition = LogCondition.of(Collections.singletonList("DIAMOND_ORE"), Arrays.asList("DIAMOND_ORE", "GOLD_ORE"));
+        assertNotNull(condition);
+        assertTrue(condition.isIgnored("DIAMOND_ORE"));
+        assertFalse(condition.isIgnored("GOLD_ORE"));
+        assertTrue(condition.isIgnored("STONE"));
+    }
+
+    @Test
+    public void empty() {
+        final LogCondition ignoreNothing = LogCondition.of(Collections.emptyList(), null);
+        assertNotNull(ignoreNothing);
+        assertFalse(ignoreNothing.isIgnored("STONE"));
+        final LogCondition logNothing = LogCondition.of(null, Collections.emptyList());
+        assertNotNull(logNothing);
+        assertTrue(logNothing.isIgnored("STONE"));
+    }
+
+    @Test
+    public void manyValues() {
+        final List<String> values = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) values.add("VALUE_" + i);
+        final LogCondition condition = LogCondition.of(values, null);
+        assertNotNull(condition);
+        for (int i = 0; i < 1000; i++) assertTrue(condition.isIgnored("value_" + i));
+        for (int i = 1000; i < 2000; i++) assertFalse(condition.isIgnored("VALUE_" + i));
+    }
+}
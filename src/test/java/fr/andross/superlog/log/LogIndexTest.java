@@ -0,0 +1,148 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writing, loading and reading through log indexes
+ * @version 1.2
+ * @author Andross
+ */
+public class LogIndexTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Saving logs of two batches, as the log manager does
+     * Batch 1: times 1000 to 1003, batch 2: times 2000 to 2003. Even logs are block breaks, odd logs are chats
+     * @return the log file
+     */
+    private File write() throws IOException {
+        final File log = new File(folder.getRoot(), "2020-01-01.log");
+        final LogSink sink = new LogSink(log);
+        long offset = 0;
+        try (final Writer out = new OutputStreamWriter(new FileOutputStream(log), StandardCharsets.UTF_8);
+             final Writer index = new OutputStreamWriter(new FileOutputStream(LogIndex.getFile(log)), StandardCharsets.UTF_8)) {
+            for (int batch = 1; batch <= 2; batch++) {
+                sink.clear();
+                for (int i = 0; i < 4; i++) {
+                    final String event = i % 2 == 0 ? "BlockBreakEvent" : "AsyncPlayerChatEvent";
+                    final String line = "[batch " + batch + "][" + event + "]: log é" + i;
+                    sink.add(line, event, batch * 1000L + i);
+                    out.write(line + System.lineSeparator());
+                }
+                offset = LogIndex.append(index, offset, sink);
+            }
+        }
+        assertEquals(log.length(), offset);
+        return log;
+    }
+
+    private static List<String> read(final File log, final long[] offsets) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        LogIndex.readLines(log, offsets, lines::add);
+        return lines;
+    }
+
+    @Test
+    public void noIndex() {
+        assertNull(LogIndex.load(new File(folder.getRoot(), "missing.log")));
+    }
+
+    @Test
+    public void offsetsByEvent() throws IOException {
+        final File log = write();
+        final LogIndex index = LogIndex.load(log);
+        assertNotNull(index);
+        assertEquals(8, index.getOffsets(e -> true).length);
+        assertEquals(Arrays.asList("[batch 1][BlockBreakEvent]: log é0", "[batch 1][BlockBreakEvent]: log é2", "[batch 2][BlockBreakEvent]: log é0", "[batch 2][BlockBreakEvent]: log é2"),
+                read(log, index.getOffsets("BlockBreakEvent"::equals)));
+        assertEquals(0, index.getOffsets("PlayerJoinEvent"::equals).length);
+    }
+
+    @Test
+    public void offsetsByTime() throws IOException {
+        final File log = write();
+        final LogIndex index = LogIndex.load(log);
+        assertNotNull(index);
+        assertEquals(Arrays.asList("[batch 1][AsyncPlayerChatEvent]: log é1", "[batch 1][AsyncPlayerChatEvent]: log é3"),
+                read(log, index.getOffsets("AsyncPlayerChatEvent"::equals, 0, 1500)));
+        assertEquals(Arrays.asList("[batch 1][BlockBreakEvent]: log é2", "[batch 1][AsyncPlayerChatEvent]: log é3", "[batch 2][BlockBreakEvent]: log é0", "[batch 2][AsyncPlayerChatEvent]: log é1"),
+                read(log, index.getOffsets(e -> true, 1002, 2001)));
+        // Without an end time
+        assertEquals(3, index.getOffsets(e -> true, 2001, Long.MAX_VALUE).length);
+        // Between the batches
+        assertEquals(0, index.getOffsets(e -> true, 1004, 1999).length);
+    }
+
+    @Test
+    public void uncovered() throws IOException {
+        final File log = write();
+        final LogIndex index = LogIndex.load(log);
+        assertNotNull(index);
+        assertTrue(index.getUncovered(log.length()).isEmpty());
+        final List<long[]> uncovered = index.getUncovered(log.length() + 100);
+        assertEquals(1, uncovered.size());
+        assertArrayEquals(new long[] { log.length(), log.length() + 100 }, uncovered.get(0));
+    }
+
+    @Test
+    public void truncatedIndex() throws IOException {
+        final File log = write();
+        // Losing the end of the second batch, as after a crash
+        final File indexFile = LogIndex.getFile(log);
+        final String content = new String(Files.readAllBytes(indexFile.toPath()), StandardCharsets.UTF_8);
+        Files.write(indexFile.toPath(), content.substring(0, content.lastIndexOf("# ") - 3).getBytes(StandardCharsets.UTF_8));
+        final LogIndex index = LogIndex.load(log);
+        assertNotNull(index);
+        assertEquals(4, index.getOffsets(e -> true).length);
+        final List<long[]> uncovered = index.getUncovered(log.length());
+        assertEquals(1, uncovered.size());
+        final List<String> lines = new ArrayList<>();
+        LogIndex.scan(log, uncovered.get(0)[0], uncovered.get(0)[1], lines::add);
+        assertEquals(4, lines.size());
+        assertEquals("[batch 2][BlockBreakEvent]: log é0", lines.get(0));
+    }
+
+    @Test
+    public void utf8Length() {
+        assertEquals(0, LogIndex.utf8Length(""));
+        assertEquals(3, LogIndex.utf8Length("abc"));
+        assertEquals(2, LogIndex.utf8Length("é"));
+        assertEquals(3, LogIndex.utf8Length("€"));
+        assertEquals(4, LogIndex.utf8Length("😀"));
+        final String s = "a é € 😀";
+        assertEquals(s.getBytes(StandardCharsets.UTF_8).length, LogIndex.utf8Length(s));
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import fr.andross.superlog.utils.LoggedEvent;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Parsing queries and matching the log lines
+ * @version 1.2
+ * @author Andross
+ */
+public class LogQueryTest {
+    private static final String BREAK = "[10:00:00][BlockBreakEvent]: Steve broke DIAMOND_ORE at -12 11 300 in world";
+    private static final String CANCELLED_BREAK = "[10:00:01][BlockBreakEvent][Cancelled]: Alex broke STONE at 5 64 5 in world_nether";
+    private static final String CHAT = "[10:00:02][AsyncPlayerChatEvent]: Steve said Found some Diamonds!";
+    private final LogClock clock = new LogClock("HH:mm:ss");
+    private final LogRouter router = new LogRouter(new File("plugins/SuperLog"), "{DAY}-{MONTH}-{YEAR}_{TYPE}.log", clock);
+    private final Map<String, LoggedEvent> events = new HashMap<>();
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    public LogQueryTest() {
+        events.put("BlockBreakEvent", event("{PLAYER} broke {TYPE} at {LOCX} {LOCY} {LOCZ} in {LOCWORLD}"));
+        events.put("AsyncPlayerChatEvent", event("{PLAYER} said {MESSAGE}"));
+    }
+
+    private static LoggedEvent event(final String message) {
+        return new LoggedEvent(new LogTemplate(message), null, null, LogPriority.NORMAL, 1, null);
+    }
+
+    private LogQuery query(final String text) {
+        return new LogQuery(text, events, router, clock, 100, 1000);
+    }
+
+    @Test
+    public void empty() {
+        final LogQuery query = query("");
+        assertTrue(query.test(BREAK));
+        assertTrue(query.test(CHAT));
+        assertFalse(query.test("not a log"));
+        assertTrue(query.testPlayer(null));
+    }
+
+    @Test
+    public void event() {
+        final LogQuery query = query("event=BlockBreak");
+        assertTrue(query.testEvent("BlockBreakEvent"));
+        assertFalse(query.testEvent("BlockPlaceEvent"));
+        assertTrue(query.test(BREAK));
+        assertFalse(query.test(CHAT));
+        assertTrue(query("event in (blockbreakevent, AsyncPlayerChat)").test(CHAT));
+        assertFalse(query("event != BlockBreak").test(BREAK));
+    }
+
+    @Test
+    public void player() {
+        final LogQuery query = query("player in (Steve, Notch)");
+        assertTrue(query.testPlayer("steve"));
+        assertFalse(query.testPlayer("Alex"));
+        assertFalse(query.testPlayer(null));
+        assertTrue(query("player!=Alex").testPlayer("Steve"));
+    }
+
+    @Test
+    public void fields() {
+        assertTrue(query("material=diamond_ore").test(BREAK));
+        assertFalse(query("material=diamond_ore").test(CANCELLED_BREAK));
+        assertTrue(query("world=world_nether").test(CANCELLED_BREAK));
+        assertTrue(query("material != (STONE, DIRT)").test(BREAK));
+        // The chat message has no material
+        assertFalse(query("material=diamond_ore").test(CHAT));
+        assertTrue(query("material!=diamond_ore").test(CHAT));
+    }
+
+    @Test
+    public void text() {
+        final LogQuery query = query("text~\"some diamonds\"");
+        assertTrue(query.test(CHAT));
+        assertFalse(query.test(BREAK));
+        assertTrue(query("text~diamond and event=AsyncPlayerChat").test(CHAT));
+        assertFalse(query("text~diamond and event=AsyncPlayerChat").test(BREAK));
+    }
+
+    @Test
+    public void cancelled() {
+        assertTrue(query("cancelled=true").test(CANCELLED_BREAK));
+        assertFalse(query("cancelled=true").test(BREAK));
+        assertTrue(query("cancelled=false").test(BREAK));
+    }
+
+    @Test
+    public void box() {
+        assertTrue(query("x=-20..0 y=..16").test(BREAK));
+        assertFalse(query("x=-20..0 y=..16").test(CANCELLED_BREAK));
+        assertTrue(query("z=300").test(BREAK));
+        assertTrue(query("y=64..").test(CANCELLED_BREAK));
+        // No location in the chat message
+        assertFalse(query("y=..16").test(CHAT));
+    }
+
+    @Test
+    public void unknownEvent() {
+        // Message unknown: only the clauses on the whole line can match
+        final String line = "[10:00:03][PlayerJoinEvent]: Steve joined";
+        assertTrue(query("text~joined").test(line));
+        assertFalse(query("world=world").test(line));
+    }
+
+    @Test
+    public void unknownEventNegation() {
+        // Message unknown: negations hold, as the message has none of their values
+        final String line = "[10:00:03][PlayerJoinEvent]: Steve joined";
+        assertTrue(query("world!=world_nether").test(line));
+        assertTrue(query("material != (STONE, DIRT) and text~joined").test(line));
+        assertFalse(query("world!=world_nether and material=STONE").test(line));
+        assertFalse(query("world!=world_nether and x=0..10").test(line));
+    }
+
+    @Test
+    public void time() throws IOException {
+        final File logs = folder.newFolder("logs");
+        Files.write(new File(logs, "14-07-20_block.log").toPath(), Arrays.asList(BREAK, CANCELLED_BREAK, "[12:00:00][BlockBreakEvent]: Alex broke DIRT at 0 64 0 in world"), StandardCharsets.UTF_8);
+        final ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            assertEquals(Arrays.asList(BREAK, CANCELLED_BREAK), query("from=2020-07-14T09:00 to=2020-07-14T11:00").run(logs, ".log", pool));
+            assertEquals(Collections.singletonList(BREAK), query("from=2020-07-14T09:00 to=2020-07-14T10:00:00").run(logs, ".log", pool));
+            assertEquals(1, query("from=2020-07-14T11:00").run(logs, ".log", pool).size());
+            // Another day: the file is skipped
+            assertTrue(query("from=2020-07-15").run(logs, ".log", pool).isEmpty());
+            assertTrue(query("to=2020-07-13").run(logs, ".log", pool).isEmpty());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void invalid() {
+        final String[] queries = {
+                "world", "=world", "world>world", "x~10", "x=a..b", "x=10..-10", "event in (BlockBreak", "text~\"diamond",
+                "limit=0", "limit=1000", "limit=ten", "from=yesterday", "from in (10:00, 11:00)", "world=", "world in ()"
+        };
+        for (final String text : queries) {
+            try {
+                query(text);
+                fail("'" + text + "' should be invalid");
+            } catch (final IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Deterministic per-event sampling
+ * @version 1.2
+ * @author Andross
+ */
+public class LogSamplingTest {
+    private static final long SEED = LogExecutor.getSampleSeed("BlockBreakEvent");
+
+    @Test
+    public void deterministic() {
+        for (int key = 0; key < 1000; key++) {
+            final boolean sampled = LogExecutor.isSampled(SEED, key, 1600000000L, 10);
+            for (int i = 0; i < 5; i++) assertEquals(sampled, LogExecutor.isSampled(SEED, key, 1600000000L, 10));
+        }
+    }
+
+    @Test
+    public void rateOfOne() {
+        for (int key = 0; key < 1000; key++) assertTrue(LogExecutor.isSampled(SEED, key, 1600000000L, 1));
+    }
+
+    @Test
+    public void proportion() {
+        int sampled = 0;
+        for (int key = 0; key < 100000; key++) if (LogExecutor.isSampled(SEED, key, 1600000000L, 10)) sampled++;
+        // One out of 10, within 5%
+        assertTrue("sampled " + sampled, sampled > 9500 && sampled < 10500);
+    }
+
+    @Test
+    public void changesEachSecond() {
+        // A player sampled out is not sampled out forever
+        int sampled = 0;
+        for (long second = 1600000000L; second < 1600001000L; second++) if (LogExecutor.isSampled(SEED, 42, second, 10)) sampled++;
+        assertTrue("sampled " + sampled, sampled > 50 && sampled < 150);
+    }
+
+    @Test
+    public void seedByEvent() {
+        assertEquals(SEED, LogExecutor.getSampleSeed("BlockBreakEvent"));
+        final long other = LogExecutor.getSampleSeed("BlockPlaceEvent");
+        assertNotEquals(SEED, other);
+        // Events are not sampled on the same players
+        int same = 0;
+        for (int key = 0; key < 10000; key++)
+            if (LogExecutor.isSampled(SEED, key, 1600000000L, 10) == LogExecutor.isSampled(other, key, 1600000000L, 10)) same++;
+        assertTrue("same " + same, same < 9000);
+    }
+}
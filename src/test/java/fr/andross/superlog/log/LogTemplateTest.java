@@ -0,0 +1,97 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compiling, rendering and parsing back the log messages
+ * @version 1.2
+ * @author Andross
+ */
+public class LogTemplateTest {
+
+    @Test
+    public void slots() {
+        final LogTemplate template = new LogTemplate("{player} broke {block.name} at {locx}, {LOCX} again");
+        assertEquals(3, template.size());
+        assertEquals(0, template.getSlot("PLAYER"));
+        assertEquals(1, template.getSlot("BLOCK.NAME"));
+        assertEquals(2, template.getSlot("LOCX"));
+        assertEquals(-1, template.getSlot("LOCY"));
+        assertEquals("BLOCK", template.getPrefix(1));
+        assertEquals("NAME", template.getArg(1));
+        assertNull(template.getPrefix(0));
+        assertEquals("PLAYER", template.getArg(0));
+    }
+
+    @Test
+    public void render() {
+        final LogTemplate template = new LogTemplate("{player} broke {block.name} at {locx}");
+        assertEquals("Steve broke STONE at 12", template.render(new String[] { "Steve", "STONE", "12" }, null));
+        // Slots without value are kept as written
+        assertEquals("Steve broke {block.name} at 12", template.render(new String[] { "Steve", null, "12" }, null));
+    }
+
+    @Test
+    public void renderNumbers() {
+        final LogTemplate template = new LogTemplate("{amount} x{ratio}");
+        final long[] numbers = { 64, Double.doubleToRawLongBits(0.5) };
+        assertEquals("64 x0.5", template.render(new String[] { LogTemplate.NUMBER, LogTemplate.DECIMAL }, numbers));
+    }
+
+    @Test
+    public void renderWithoutSlot() {
+        final LogTemplate template = new LogTemplate("server started");
+        assertEquals(0, template.size());
+        assertEquals("server started", template.render(new String[0], null));
+        assertArrayEquals(new String[0], template.parse("server started"));
+        assertNull(template.parse("server stopped"));
+    }
+
+    @Test
+    public void roundTrip() {
+        final LogTemplate template = new LogTemplate("[{world}] {player} broke {block.name} at {locx} {locy} {locz}");
+        final String[] values = { "world_nether", "Steve", "NETHER_QUARTZ_ORE", "-12", "64", "1024" };
+        assertArrayEquals(values, template.parse(template.render(values, null)));
+    }
+
+    @Test
+    public void roundTripRepeatedSlot() {
+        final LogTemplate template = new LogTemplate("{player} said '{message}' ({player})");
+        final String[] values = { "Alex", "hello (world)" };
+        final String rendered = template.render(values, null);
+        assertEquals("Alex said 'hello (world)' (Alex)", rendered);
+        assertArrayEquals(values, template.parse(rendered));
+    }
+
+    @Test
+    public void roundTripRegexCharacters() {
+        final LogTemplate template = new LogTemplate("$ {a} .* {b} \\Q[x]");
+        final String[] values = { "1+1", "a|b\nnext line" };
+        assertArrayEquals(values, template.parse(template.render(values, null)));
+    }
+
+    @Test
+    public void parseNotMatching() {
+        final LogTemplate template = new LogTemplate("{player} broke {block.name}");
+        assertNull(template.parse("Steve placed STONE"));
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * SuperLog - Save almost all minecraft actions into logs!
+ * Copyright (C) 2020 André Sustac
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.andross.superlog.log;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+
+import static org.junit.Assert.*;
+
+/**
+ * Parsing time ranges and matching the log files and lines
+ * @version 1.2
+ * @author Andross
+ */
+public class LogTimeWindowTest {
+    private final LogClock clock = new LogClock("HH:mm:ss");
+    private final ZoneId zone = clock.getZone();
+
+    private long at(final LocalDateTime date) {
+        return date.atZone(zone).toInstant().toEpochMilli();
+    }
+
+    @Test
+    public void parseDay() {
+        final LocalDate day = LocalDate.of(2020, 7, 14);
+        assertEquals(at(day.atStartOfDay()), LogTimeWindow.parse("2020-07-14", false, clock));
+        assertEquals(at(day.plusDays(1).atStartOfDay()) - 1, LogTimeWindow.parse("2020-07-14", true, clock));
+    }
+
+    @Test
+    public void parseDateTime() {
+        final LocalDateTime minute = LocalDateTime.of(2020, 7, 14, 13, 37);
+        assertEquals(at(minute), LogTimeWindow.parse("2020-07-14T13:37", false, clock));
+        assertEquals(at(minute) + 59999, LogTimeWindow.parse("2020-07-14T13:37", true, clock));
+        assertEquals(at(minute.withSecond(42)), LogTimeWindow.parse("2020-07-14T13:37:42", false, clock));
+        assertEquals(at(minute.withSecond(42)) + 999, LogTimeWindow.parse("2020-07-14T13:37:42", true, clock));
+    }
+
+    @Test
+    public void parseTimeToday() {
+        final long time = LogTimeWindow.parse("08:30", false, clock);
+        final LocalDate today = LocalDate.now(zone);
+        // Around midnight, today may have changed since the parse
+        assertTrue(time == at(today.atTime(8, 30)) || time == at(today.minusDays(1).atTime(8, 30)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseInvalid() {
+        LogTimeWindow.parse("yesterday", false, clock);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseInvalidDate() {
+        LogTimeWindow.parse("2020-13-01", false, clock);
+    }
+
+    @Test
+    public void testFile() {
+        final LogRouter router = new LogRouter(new File("plugins/SuperLog"), "{DAY}-{MONTH}-{YEAR}_{TYPE}.log", clock);
+        final LogTimeWindow window = new LogTimeWindow(LogTimeWindow.parse("2020-07-14T23:00", false, clock), LogTimeWindow.parse("2020-07-15T01:00", true, clock), router, clock);
+        assertTrue(window.testFile(new File("14-07-20_block.log")));
+        assertTrue(window.testFile(new File("15-07-20_block.log.gz")));
+        assertFalse(window.testFile(new File("13-07-20_block.log")));
+        assertFalse(window.testFile(new File("16-07-20_block.log")));
+        // Unknown day: may hold logs of the range
+        assertTrue(window.testFile(new File("block.log")));
+        assertEquals(LocalDate.of(2020, 7, 14), window.getDate(new File("14-07-20_block.log")));
+    }
+
+    @Test
+    public void testLine() {
+        final LogRouter router = new LogRouter(new File("plugins/SuperLog"), "{DAY}-{MONTH}-{YEAR}_{TYPE}.log", clock);
+        final LocalDate day = LocalDate.of(2020, 7, 14);
+        final LogTimeWindow window = new LogTimeWindow(at(day.atTime(10, 0)), at(day.atTime(LocalTime.of(11, 0))) + 59999, router, clock);
+        assertTrue(window.testLine("[10:00:00][BlockBreakEvent]: Steve broke STONE", day));
+        assertTrue(window.testLine("[11:00:59][BlockBreakEvent]: Steve broke STONE", day));
+        assertFalse(window.testLine("[09:59:59][BlockBreakEvent]: Steve broke STONE", day));
+        assertFalse(window.testLine("[11:01:00][BlockBreakEvent]: Steve broke STONE", day));
+        assertFalse(window.testLine("[10:30:00][BlockBreakEvent]: Steve broke STONE", day.plusDays(1)));
+        // Unknown time: kept
+        assertTrue(window.testLine("[10:30:00][BlockBreakEvent]: Steve broke STONE", null));
+        assertTrue(window.testLine("no time", day));
+    }
+}